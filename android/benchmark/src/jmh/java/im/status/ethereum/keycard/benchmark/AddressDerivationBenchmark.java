@@ -0,0 +1,55 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.AddressDeriver;
+import im.status.keycard.applet.BIP32KeyPair;
+
+/**
+ * Host side derivation of wallet addresses from an exported root key, as done by deriveAddresses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AddressDerivationBenchmark {
+    @Param({"1", "20", "500"})
+    public int count;
+
+    private AddressDeriver deriver;
+    private byte[] publicKey;
+    private byte[] chainCode;
+
+    @Setup
+    public void setup() {
+        BIP32KeyPair root = CardFixtures.keyPair();
+        publicKey = root.getPublicKey();
+        chainCode = root.getChainCode();
+        deriver = new AddressDeriver();
+    }
+
+    @TearDown
+    public void tearDown() {
+        deriver.shutdown();
+    }
+
+    @Benchmark
+    public AddressDeriver.DerivedKey[] derive() throws InterruptedException {
+        return deriver.derive(publicKey, chainCode, 0, count);
+    }
+}
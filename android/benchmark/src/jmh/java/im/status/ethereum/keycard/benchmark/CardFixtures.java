@@ -0,0 +1,211 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+
+import im.status.ethereum.keycard.HexUtils;
+import im.status.ethereum.keycard.SignatureRecovery;
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.RecoverableSignature;
+
+/**
+ * Deterministic card responses shared by the benchmarks, in the formats produced by the Keycard applet.
+ */
+public class CardFixtures {
+    public static final String MNEMONIC = "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+
+    public static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256k1");
+    public static final ECDomainParameters DOMAIN = new ECDomainParameters(CURVE.getCurve(), CURVE.getG(), CURVE.getN(), CURVE.getH());
+
+    public static final int INS_SELECT = 0xa4;
+    public static final int INS_SIGN = 0xc0;
+    public static final int INS_EXPORT_KEY = 0xc2;
+    public static final int INS_LOAD_KEY = 0xd0;
+    public static final int INS_GENERATE_MNEMONIC = 0xd2;
+
+    public static final int EXPORT_KEY_P2_PRIVATE_AND_PUBLIC = 0x00;
+    public static final int EXPORT_KEY_P2_EXTENDED_PUBLIC = 0x02;
+
+    public static final int TLV_APPLICATION_INFO = 0xa4;
+    public static final int TLV_SIGNATURE_TEMPLATE = 0xa0;
+    public static final int TLV_UID = 0x8f;
+    public static final int TLV_KEY_TEMPLATE = 0xa1;
+    public static final int TLV_PUB_KEY = 0x80;
+    public static final int TLV_PRIV_KEY = 0x81;
+    public static final int TLV_CHAIN_CODE = 0x82;
+    public static final int TLV_INT = 0x02;
+    public static final int TLV_KEY_UID = 0x8e;
+    public static final int TLV_CAPABILITIES = 0x8d;
+
+    private CardFixtures() {
+    }
+
+    public static byte[] seed() {
+        byte[] seed = new byte[64];
+        for (int i = 0; i < seed.length; i++) {
+            seed[i] = (byte) i;
+        }
+
+        return seed;
+    }
+
+    public static BIP32KeyPair keyPair() {
+        return BIP32KeyPair.fromBinarySeed(seed());
+    }
+
+    public static byte[] hash() {
+        byte[] hash = new byte[32];
+        for (int i = 0; i < hash.length; i++) {
+            hash[i] = (byte) (0xa0 + i);
+        }
+
+        return hash;
+    }
+
+    /**
+     * The response to SELECT of an initialized applet, version 3.1, with the given secure channel public key.
+     */
+    public static byte[] applicationInfo(byte[] secureChannelPubKey) {
+        byte[] uid = new byte[16];
+        byte[] keyUID = new byte[32];
+        for (int i = 0; i < uid.length; i++) {
+            uid[i] = (byte) (0x10 + i);
+        }
+        for (int i = 0; i < keyUID.length; i++) {
+            keyUID[i] = (byte) (0x40 + i);
+        }
+
+        return tlv(TLV_APPLICATION_INFO, concat(
+                tlv(TLV_UID, uid),
+                tlv(TLV_PUB_KEY, secureChannelPubKey),
+                tlv(TLV_INT, new byte[] { 0x03, 0x01 }),
+                tlv(TLV_INT, new byte[] { 0x04 }),
+                tlv(TLV_KEY_UID, keyUID),
+                tlv(TLV_CAPABILITIES, new byte[] { 0x0f })));
+    }
+
+    /**
+     * The response to SIGN of the given hash with the private key of the given pair.
+     */
+    public static byte[] signature(BIP32KeyPair keyPair, byte[] hash) {
+        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+        signer.init(true, new ECPrivateKeyParameters(new BigInteger(1, keyPair.getPrivateKey()), DOMAIN));
+        BigInteger[] rs = signer.generateSignature(hash);
+
+        BigInteger s = rs[1];
+        if (s.compareTo(CURVE.getN().shiftRight(1)) > 0) {
+            s = CURVE.getN().subtract(s);
+        }
+
+        try {
+            byte[] der = new DERSequence(new ASN1Encodable[] { new ASN1Integer(rs[0]), new ASN1Integer(s) }).getEncoded();
+            return tlv(TLV_SIGNATURE_TEMPLATE, concat(tlv(TLV_PUB_KEY, keyPair.getPublicKey()), der));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The response to EXPORT KEY of the given pair with the given P2: the public key, along with the private key
+     * or the chain code.
+     */
+    public static byte[] exportedKey(BIP32KeyPair keyPair, int p2) {
+        byte[] pub = tlv(TLV_PUB_KEY, keyPair.getPublicKey());
+
+        if (p2 == EXPORT_KEY_P2_PRIVATE_AND_PUBLIC) {
+            return tlv(TLV_KEY_TEMPLATE, concat(pub, tlv(TLV_PRIV_KEY, keyPair.getPrivateKey())));
+        } else if (p2 == EXPORT_KEY_P2_EXTENDED_PUBLIC) {
+            return tlv(TLV_KEY_TEMPLATE, concat(pub, tlv(TLV_CHAIN_CODE, keyPair.getChainCode())));
+        }
+
+        return tlv(TLV_KEY_TEMPLATE, pub);
+    }
+
+    /**
+     * The response to GENERATE MNEMONIC for 12 words.
+     */
+    public static byte[] mnemonicIndexes() {
+        byte[] data = new byte[24];
+        for (int i = 0; i < 12; i++) {
+            int index = (i * 173) % 2048;
+            data[i * 2] = (byte) (index >> 8);
+            data[i * 2 + 1] = (byte) index;
+        }
+
+        return data;
+    }
+
+    /**
+     * 2048 distinct, sorted words, one per line. The shape matches a BIP39 list, which is all the parsing code
+     * cares about.
+     */
+    public static String wordlist() {
+        StringBuilder words = new StringBuilder();
+
+        for (int i = 0; i < 2048; i++) {
+            words.append((char) ('a' + i / 256));
+            words.append((char) ('a' + (i / 16) % 16));
+            words.append((char) ('a' + i % 16));
+            words.append("word\n");
+        }
+
+        return words.toString();
+    }
+
+    /**
+     * Serializes the signature in the response to SIGN of the given hash the same way SmartCard does before
+     * returning it to JS.
+     */
+    public static String toSignatureString(byte[] hash, byte[] data) {
+        return HexUtils.toHexString(SignatureRecovery.toEthereumSignature(hash, data));
+    }
+
+    /**
+     * Serializes a signature recovered by keycard-java, the way SmartCard did before SignatureRecovery.
+     */
+    public static String toSignatureString(RecoverableSignature signature) {
+        byte[] r = signature.getR();
+        byte[] s = signature.getS();
+        byte[] out = new byte[r.length + s.length + 1];
+        System.arraycopy(r, 0, out, 0, r.length);
+        System.arraycopy(s, 0, out, r.length, s.length);
+        out[out.length - 1] = (byte) signature.getRecId();
+
+        return HexUtils.toHexString(out);
+    }
+
+    public static byte[] tlv(int tag, byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+
+        if (value.length > 0x7f) {
+            out.write(0x81);
+        }
+
+        out.write(value.length);
+        out.write(value, 0, value.length);
+
+        return out.toByteArray();
+    }
+
+    public static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+}
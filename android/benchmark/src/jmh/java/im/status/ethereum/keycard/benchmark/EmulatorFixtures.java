@@ -0,0 +1,22 @@
+package im.status.ethereum.keycard.benchmark;
+
+import im.status.ethereum.keycard.emulator.KeycardEmulator;
+
+/**
+ * Emulated cards shared by the benchmarks.
+ */
+public class EmulatorFixtures {
+    public static final String PIN = "123456";
+    public static final String PUK = "123456789012";
+    public static final byte[] PAIRING_SECRET = new byte[32];
+
+    private EmulatorFixtures() {
+    }
+
+    /**
+     * An initialized card, deterministic across runs, with the key of CardFixtures.seed() loaded.
+     */
+    public static KeycardEmulator card() {
+        return new KeycardEmulator(42).setup(PIN, PUK, PAIRING_SECRET).loadSeed(CardFixtures.seed());
+    }
+}
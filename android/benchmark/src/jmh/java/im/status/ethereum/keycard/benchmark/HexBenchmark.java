@@ -0,0 +1,74 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.HexUtils;
+
+/**
+ * The hex codec used for every key, hash and signature crossing the bridge, against the BouncyCastle encoder it
+ * replaced. 32 bytes is a hash or a key UID, 65 an uncompressed public key. Run with the gc profiler (enabled in
+ * build.gradle) to compare the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HexBenchmark {
+    @Param({"32", "65"})
+    public int size;
+
+    private byte[] bytes;
+    private byte[] decoded;
+    private String hex;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+
+        decoded = new byte[size];
+        hex = Hex.toHexString(bytes);
+    }
+
+    @Benchmark
+    public String encodeBouncyCastle() {
+        return Hex.toHexString(bytes);
+    }
+
+    @Benchmark
+    public String encode() {
+        return HexUtils.toHexString(bytes);
+    }
+
+    @Benchmark
+    public byte[] decodeBouncyCastle() {
+        return Hex.decode(hex);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return HexUtils.decode(hex);
+    }
+
+    @Benchmark
+    public int decodeInto() {
+        return HexUtils.decode(hex, decoded, 0);
+    }
+}
@@ -0,0 +1,124 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import im.status.ethereum.keycard.HexUtils;
+import im.status.ethereum.keycard.KeyExportSteps;
+import im.status.ethereum.keycard.OperationCheckpoint;
+import im.status.ethereum.keycard.Tracer;
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.applet.Mnemonic;
+import im.status.keycard.io.APDUCommand;
+import im.status.keycard.io.APDUException;
+import im.status.keycard.io.APDUResponse;
+
+/**
+ * The host side of importKeys and generateAndLoadKey: seed derivation, LOAD KEY, the EXPORT KEY steps of
+ * KeyExportSteps with the paths and P2 used by SmartCard, and the parsing and hex encoding of the exported keys.
+ * Only the exchanges are scripted, the commands are built and the responses parsed by the real command set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class KeyExportBenchmark {
+    @Param({"0", "500"})
+    public int latencyMicros;
+
+    private KeycardCommandSet cmdSet;
+    private BIP32KeyPair preparedKeyPair;
+    private Tracer tracer;
+
+    @Setup
+    public void setup() throws IOException {
+        final BIP32KeyPair keyPair = CardFixtures.keyPair();
+        preparedKeyPair = BIP32KeyPair.fromBinarySeed(Mnemonic.toBinarySeed(CardFixtures.MNEMONIC, ""));
+        tracer = new Tracer();
+
+        ScriptedCardChannel channel = new ScriptedCardChannel();
+        channel.on(CardFixtures.INS_SELECT, CardFixtures.applicationInfo(keyPair.getPublicKey()));
+        channel.on(CardFixtures.INS_EXPORT_KEY, new ScriptedCardChannel.Responder() {
+            public APDUResponse respond(APDUCommand cmd) {
+                return ScriptedCardChannel.ok(CardFixtures.exportedKey(keyPair, cmd.getP2()));
+            }
+        });
+        channel.on(CardFixtures.INS_LOAD_KEY, new byte[0]);
+
+        cmdSet = new KeycardCommandSet(channel);
+        cmdSet.select();
+        channel.setLatencyMicros(latencyMicros);
+    }
+
+    @Benchmark
+    public void importKeys(Blackhole bh) throws IOException, APDUException {
+        OperationCheckpoint cp = new OperationCheckpoint("importKeys", "", "");
+        KeyExportSteps.export(cmdSet, cp, KeyExportSteps.IMPORT_PATHS, KeyExportSteps.IMPORT_P2, tracer);
+
+        BIP32KeyPair masterPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.MASTER_PATH));
+        bh.consume(HexUtils.toHexString(masterPair.toEthereumAddress()));
+        bh.consume(HexUtils.toHexString(masterPair.getPublicKey()));
+        consumeKeys(cp, bh);
+        cp.wipe();
+    }
+
+    @Benchmark
+    public void generateAndLoadKey(Blackhole bh) throws IOException, APDUException {
+        byte[] seed = Mnemonic.toBinarySeed(CardFixtures.MNEMONIC, "");
+        BIP32KeyPair keyPair = BIP32KeyPair.fromBinarySeed(seed);
+        loadAndExport(keyPair, bh);
+    }
+
+    @Benchmark
+    public void generateAndLoadPreparedKey(Blackhole bh) throws IOException, APDUException {
+        loadAndExport(preparedKeyPair, bh);
+    }
+
+    private void loadAndExport(BIP32KeyPair keyPair, Blackhole bh) throws IOException, APDUException {
+        cmdSet.loadKey(keyPair).checkOK();
+
+        OperationCheckpoint cp = new OperationCheckpoint("loadKey", "", "");
+        KeyExportSteps.export(cmdSet, cp, KeyExportSteps.LOAD_PATHS, KeyExportSteps.LOAD_P2, tracer);
+
+        bh.consume(HexUtils.toHexString(keyPair.toEthereumAddress()));
+        bh.consume(HexUtils.toHexString(keyPair.getPublicKey()));
+        consumeKeys(cp, bh);
+        cp.wipe();
+    }
+
+    // The keys both operations return, encoded as SmartCard does.
+    private void consumeKeys(OperationCheckpoint cp, Blackhole bh) {
+        BIP32KeyPair rootKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.ROOT_PATH));
+        bh.consume(HexUtils.toHexString(rootKeyPair.toEthereumAddress()));
+        bh.consume(HexUtils.toHexString(rootKeyPair.getPublicKey()));
+        bh.consume(HexUtils.toHexString(rootKeyPair.getChainCode()));
+
+        BIP32KeyPair walletKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.WALLET_PATH));
+        bh.consume(HexUtils.toHexString(walletKeyPair.toEthereumAddress()));
+        bh.consume(HexUtils.toHexString(walletKeyPair.getPublicKey()));
+
+        BIP32KeyPair whisperKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.WHISPER_PATH));
+        bh.consume(HexUtils.toHexString(whisperKeyPair.toEthereumAddress()));
+        bh.consume(HexUtils.toHexString(whisperKeyPair.getPublicKey()));
+        bh.consume(HexUtils.toHexString(whisperKeyPair.getPrivateKey()));
+
+        BIP32KeyPair encryptionKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.ENCRYPTION_PATH));
+        bh.consume(HexUtils.toHexString(encryptionKeyPair.getPublicKey()));
+    }
+}
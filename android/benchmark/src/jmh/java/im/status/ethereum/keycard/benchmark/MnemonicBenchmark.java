@@ -0,0 +1,80 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.Wordlist;
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.applet.Mnemonic;
+import im.status.keycard.io.APDUException;
+
+/**
+ * generateMnemonic, parsing the wordlist on every call as it used to be done and with the preloaded Wordlist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MnemonicBenchmark {
+    @Param({"0", "500"})
+    public int latencyMicros;
+
+    private KeycardCommandSet cmdSet;
+    private String words;
+    private Wordlist wordlist;
+
+    @Setup
+    public void setup() {
+        words = CardFixtures.wordlist();
+        wordlist = Wordlist.parse(words);
+
+        ScriptedCardChannel channel = new ScriptedCardChannel();
+        channel.on(CardFixtures.INS_GENERATE_MNEMONIC, CardFixtures.mnemonicIndexes());
+        channel.setLatencyMicros(latencyMicros);
+
+        cmdSet = new KeycardCommandSet(channel);
+    }
+
+    @Benchmark
+    public String generateMnemonicParsingWordlist() throws IOException, APDUException {
+        Mnemonic mnemonic = new Mnemonic(cmdSet.generateMnemonic(KeycardCommandSet.GENERATE_MNEMONIC_12_WORDS).checkOK().getData());
+
+        Scanner scanner = new Scanner(words);
+        ArrayList<String> list = new ArrayList<>();
+        while(scanner.hasNextLine()) {
+            list.add(scanner.nextLine());
+        }
+        scanner.close();
+
+        mnemonic.setWordlist(list.toArray(new String[Wordlist.SIZE]));
+        return mnemonic.toMnemonicPhrase();
+    }
+
+    @Benchmark
+    public String generateMnemonicPreloaded() throws IOException, APDUException {
+        Mnemonic mnemonic = new Mnemonic(cmdSet.generateMnemonic(KeycardCommandSet.GENERATE_MNEMONIC_12_WORDS).checkOK().getData());
+        mnemonic.setWordlist(wordlist.getWords());
+        return mnemonic.toMnemonicPhrase();
+    }
+
+    @Benchmark
+    public Wordlist parseWordlist() {
+        return Wordlist.parse(words);
+    }
+}
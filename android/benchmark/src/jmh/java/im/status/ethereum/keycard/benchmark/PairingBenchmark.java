@@ -0,0 +1,47 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.PairingSecretCache;
+
+/**
+ * The pairing secret derivation done by tryDefaultPairing and pair, with and without the precomputed secret.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PairingBenchmark {
+    private static final String PASSWORD = "KeycardDefaultPairing";
+
+    private PairingSecretCache cache;
+
+    @Setup
+    public void setup() {
+        cache = new PairingSecretCache();
+        cache.get(PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] pairingSecretCold() {
+        return new PairingSecretCache().get(PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] pairingSecretCached() {
+        return cache.get(PASSWORD);
+    }
+}
@@ -0,0 +1,65 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import im.status.ethereum.keycard.SignatureRecovery;
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.RecoverableSignature;
+
+/**
+ * Finding the recovery id of the signatures returned by the card, for a batch of hashes signed with the same key:
+ * keycard-java's RecoverableSignature, which recovers candidate public keys until one matches, against
+ * SignatureRecovery, which computes R once from the public key in the signature template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RecoveryIdBenchmark {
+    private static final int BATCH_SIZE = 16;
+
+    private byte[][] hashes;
+    private byte[][] signatures;
+
+    @Setup
+    public void setup() {
+        BIP32KeyPair keyPair = CardFixtures.keyPair();
+
+        hashes = new byte[BATCH_SIZE][];
+        signatures = new byte[BATCH_SIZE][];
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            hashes[i] = CardFixtures.hash();
+            hashes[i][0] = (byte) i;
+            signatures[i] = CardFixtures.signature(keyPair, hashes[i]);
+        }
+    }
+
+    @Benchmark
+    public void recoverableSignature(Blackhole bh) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            bh.consume(CardFixtures.toSignatureString(new RecoverableSignature(hashes[i], signatures[i])));
+        }
+    }
+
+    @Benchmark
+    public void signatureRecovery(Blackhole bh) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            bh.consume(SignatureRecovery.toEthereumSignature(hashes[i], signatures[i]));
+        }
+    }
+}
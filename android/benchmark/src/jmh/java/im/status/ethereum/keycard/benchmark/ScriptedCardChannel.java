@@ -0,0 +1,75 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.io.IOException;
+
+import im.status.keycard.io.APDUCommand;
+import im.status.keycard.io.APDUResponse;
+import im.status.keycard.io.CardChannel;
+
+/**
+ * A CardChannel answering each command with the responder scripted for its INS byte, after a fixed latency.
+ * Unscripted commands get SW 6D00 (INS not supported). The latency is spent spinning rather than sleeping, so it is
+ * accurate even for a few microseconds.
+ */
+public class ScriptedCardChannel implements CardChannel {
+    public interface Responder {
+        APDUResponse respond(APDUCommand cmd);
+    }
+
+    private final Responder[] responders;
+    private long latencyNanos;
+    private long commands;
+
+    public ScriptedCardChannel() {
+        this.responders = new Responder[256];
+    }
+
+    public ScriptedCardChannel on(int ins, Responder responder) {
+        responders[ins & 0xff] = responder;
+        return this;
+    }
+
+    public ScriptedCardChannel on(int ins, final byte[] data) {
+        return on(ins, new Responder() {
+            public APDUResponse respond(APDUCommand cmd) {
+                return ok(data);
+            }
+        });
+    }
+
+    public void setLatencyMicros(int latencyMicros) {
+        this.latencyNanos = latencyMicros * 1000L;
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+
+    @Override
+    public APDUResponse send(APDUCommand cmd) throws IOException {
+        commands++;
+
+        if (latencyNanos > 0) {
+            long deadline = System.nanoTime() + latencyNanos;
+            while (System.nanoTime() - deadline < 0) {
+                // spin
+            }
+        }
+
+        Responder responder = responders[cmd.getIns() & 0xff];
+        return responder == null ? sw(0x6d00) : responder.respond(cmd);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    public static APDUResponse ok(byte[] data) {
+        return new APDUResponse(data, (byte) 0x90, (byte) 0x00);
+    }
+
+    public static APDUResponse sw(int sw) {
+        return new APDUResponse(new byte[0], (byte) (sw >> 8), (byte) sw);
+    }
+}
@@ -0,0 +1,105 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.SignatureRecovery;
+import im.status.ethereum.keycard.emulator.KeycardEmulator;
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.applet.Pairing;
+
+/**
+ * The work done at the start of every tap against an emulated card: SELECT, opening the secure channel with an
+ * existing pairing and verifying the PIN, with the real host and card side cryptography.
+ *
+ * The card side of the secure channel is the emulator's own implementation, so the setup first checks that it
+ * interoperates with keycard-java's: the key exported over the channel must be the one of the loaded seed, and a
+ * signature made over the channel must verify against it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SecureChannelBenchmark {
+    @Param({ "0", "2000" })
+    public int latencyMicros;
+
+    private KeycardEmulator card;
+    private Pairing pairing;
+
+    @Setup
+    public void setup() throws Exception {
+        card = EmulatorFixtures.card();
+
+        KeycardCommandSet cmdSet = new KeycardCommandSet(card);
+        cmdSet.select().checkOK();
+        cmdSet.autoPair(EmulatorFixtures.PAIRING_SECRET);
+        pairing = cmdSet.getPairing();
+
+        checkSecureChannel();
+
+        card.setLatencyMicros(latencyMicros);
+    }
+
+    @Benchmark
+    public KeycardCommandSet openSecureChannel() throws Exception {
+        card.reconnect();
+
+        KeycardCommandSet cmdSet = new KeycardCommandSet(card);
+        cmdSet.select().checkOK();
+        cmdSet.setPairing(pairing);
+        cmdSet.autoOpenSecureChannel();
+
+        return cmdSet;
+    }
+
+    private void checkSecureChannel() throws Exception {
+        KeycardCommandSet cmdSet = openSecureChannel();
+        cmdSet.verifyPIN(EmulatorFixtures.PIN).checkAuthOK();
+
+        byte[] publicKey = BIP32KeyPair.fromTLV(cmdSet.exportKey("m", false, true).checkOK().getData()).getPublicKey();
+
+        if (!Arrays.equals(publicKey, CardFixtures.keyPair().getPublicKey())) {
+            throw new IllegalStateException("The key exported over the secure channel is not the loaded one");
+        }
+
+        byte[] hash = CardFixtures.hash();
+        byte[] signature = SignatureRecovery.toEthereumSignature(hash, cmdSet.sign(hash).checkOK().getData());
+
+        ECDSASigner verifier = new ECDSASigner();
+        verifier.init(false, new ECPublicKeyParameters(CardFixtures.CURVE.getCurve().decodePoint(publicKey), CardFixtures.DOMAIN));
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64));
+
+        if (!verifier.verifySignature(hash, r, s)) {
+            throw new IllegalStateException("The signature made over the secure channel does not verify");
+        }
+    }
+
+    @Benchmark
+    public KeycardCommandSet openSecureChannelAndVerifyPIN() throws Exception {
+        KeycardCommandSet cmdSet = openSecureChannel();
+        cmdSet.verifyPIN(EmulatorFixtures.PIN).checkAuthOK();
+
+        return cmdSet;
+    }
+}
@@ -0,0 +1,68 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.SignatureRecovery;
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.io.APDUException;
+
+/**
+ * sign and signWithPath: the SIGN command, finding the recovery id with SignatureRecovery and serializing the
+ * signature, as SmartCard does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SignBenchmark {
+    @Param({"0", "500"})
+    public int latencyMicros;
+
+    private KeycardCommandSet cmdSet;
+    private byte[] hash;
+
+    @Setup
+    public void setup() throws IOException {
+        BIP32KeyPair keyPair = CardFixtures.keyPair();
+        hash = CardFixtures.hash();
+
+        ScriptedCardChannel channel = new ScriptedCardChannel();
+        channel.on(CardFixtures.INS_SIGN, CardFixtures.signature(keyPair, hash));
+        channel.setLatencyMicros(latencyMicros);
+
+        cmdSet = new KeycardCommandSet(channel);
+    }
+
+    @Benchmark
+    public String sign() throws IOException, APDUException {
+        byte[] data = cmdSet.sign(hash).checkOK().getData();
+        return CardFixtures.toSignatureString(hash, data);
+    }
+
+    @Benchmark
+    public String signWithPath() throws IOException, APDUException {
+        byte[] data = cmdSet.signWithPath(hash, "m/44'/60'/0'/0/0", false).checkOK().getData();
+        return CardFixtures.toSignatureString(hash, data);
+    }
+
+    @Benchmark
+    public byte[] signatureRecovery() throws IOException, APDUException {
+        return SignatureRecovery.toEthereumSignature(hash, cmdSet.sign(hash).getData());
+    }
+}
@@ -0,0 +1,153 @@
+package im.status.ethereum.keycard.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import im.status.ethereum.keycard.KeyExportSteps;
+import im.status.ethereum.keycard.OperationCheckpoint;
+import im.status.ethereum.keycard.Tracer;
+import im.status.ethereum.keycard.emulator.KeycardEmulator;
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.applet.Pairing;
+import im.status.keycard.io.APDUException;
+
+/**
+ * The cost of losing the tag in the middle of the key export sequence of importKeys, run by KeyExportSteps with the
+ * paths and P2 used by SmartCard. restart starts the sequence over from the first key after the loss, as the bridge
+ * did before operations were checkpointed, so the later the loss the more work is repeated. resume keeps the
+ * checkpoint across the loss, as SmartCard does, and only exports the keys still missing after opening a new secure
+ * channel. lostAt is the number of commands sent before the loss, -1 for no loss.
+ *
+ * Before measuring, the setup checks that resuming yields the same keys as an uninterrupted sequence whichever
+ * command the tag is lost at, whether or not the lost command reached the card.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TagLossBenchmark {
+    // SELECT, OPEN SECURE CHANNEL, MUTUALLY AUTHENTICATE, VERIFY PIN and one EXPORT KEY per path.
+    private static final int COMMANDS = 4 + KeyExportSteps.IMPORT_PATHS.length;
+
+    @Param({ "-1", "5", "8" })
+    public int lostAt;
+
+    @Param({ "0", "2000" })
+    public int latencyMicros;
+
+    private KeycardEmulator card;
+    private Pairing pairing;
+    private Tracer tracer;
+
+    @Setup
+    public void setup() throws Exception {
+        card = EmulatorFixtures.card();
+        tracer = new Tracer();
+
+        KeycardCommandSet cmdSet = new KeycardCommandSet(card);
+        cmdSet.select().checkOK();
+        cmdSet.autoPair(EmulatorFixtures.PAIRING_SECRET);
+        pairing = cmdSet.getPairing();
+
+        checkResume();
+
+        card.setLatencyMicros(latencyMicros);
+    }
+
+    @Benchmark
+    public int restart() throws Exception {
+        return exportKeys(lostAt, true, false);
+    }
+
+    @Benchmark
+    public int resume() throws Exception {
+        return exportKeys(lostAt, true, true);
+    }
+
+    private int exportKeys(int lostAt, boolean executeLost, boolean resume) throws Exception {
+        OperationCheckpoint cp = new OperationCheckpoint("importKeys", "", "");
+
+        try {
+            return exportKeys(cp, lostAt, executeLost, resume);
+        } finally {
+            cp.wipe();
+        }
+    }
+
+    // Returns the number of attempts it took to export all keys into the checkpoint.
+    private int exportKeys(OperationCheckpoint cp, int lostAt, boolean executeLost, boolean resume) throws Exception {
+        card.reconnect();
+
+        if (lostAt >= 0) {
+            card.disconnectAfter(lostAt, executeLost);
+        }
+
+        int attempts = 0;
+
+        while (true) {
+            attempts++;
+
+            try {
+                KeyExportSteps.export(authenticate(), cp, KeyExportSteps.IMPORT_PATHS, KeyExportSteps.IMPORT_P2, tracer);
+                return attempts;
+            } catch (IOException e) {
+                card.reconnect();
+
+                if (!resume) {
+                    cp.wipe();
+                }
+            }
+        }
+    }
+
+    private void checkResume() throws Exception {
+        OperationCheckpoint expected = new OperationCheckpoint("importKeys", "", "");
+        exportKeys(expected, -1, false, true);
+
+        for (int i = 0; i < COMMANDS; i++) {
+            for (boolean executeLost : new boolean[] { false, true }) {
+                OperationCheckpoint cp = new OperationCheckpoint("importKeys", "", "");
+                int attempts = exportKeys(cp, i, executeLost, true);
+
+                if (attempts != 2) {
+                    throw new IllegalStateException("Tag lost at command " + i + " but the keys were exported in " + attempts + " attempts");
+                }
+
+                for (String path : KeyExportSteps.IMPORT_PATHS) {
+                    if (!Arrays.equals(expected.get(path), cp.get(path))) {
+                        throw new IllegalStateException("Key " + path + " differs after losing the tag at command " + i);
+                    }
+                }
+
+                cp.wipe();
+            }
+        }
+
+        expected.wipe();
+    }
+
+    private KeycardCommandSet authenticate() throws IOException, APDUException {
+        KeycardCommandSet cmdSet = new KeycardCommandSet(card);
+        cmdSet.select().checkOK();
+        cmdSet.setPairing(pairing);
+        cmdSet.autoOpenSecureChannel();
+        cmdSet.verifyPIN(EmulatorFixtures.PIN).checkAuthOK();
+
+        return cmdSet;
+    }
+}
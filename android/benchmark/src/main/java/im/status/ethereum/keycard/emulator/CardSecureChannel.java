@@ -0,0 +1,221 @@
+package im.status.ethereum.keycard.emulator;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.CBCBlockCipherMac;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.ISO7816d4Padding;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.BigIntegers;
+
+/**
+ * The card side of the Keycard secure channel: ECDH with the card key, session keys derived from the shared secret,
+ * the pairing key and a card salt, AES-CBC encryption with ISO 7816-4 padding and AES CBC-MAC, where each MAC is
+ * the IV of the next message.
+ */
+public class CardSecureChannel {
+    public static final int SECRET_LENGTH = 32;
+    public static final int BLOCK_SIZE = 16;
+
+    private final SecureRandom random;
+    private final BigInteger privateKey;
+    private final byte[] publicKey;
+
+    private byte[] encKey;
+    private byte[] macKey;
+    private byte[] iv;
+    private int pairingIndex;
+    private boolean open;
+    private boolean authenticated;
+
+    public CardSecureChannel(SecureRandom random) {
+        this.random = random;
+        this.privateKey = new BigInteger(256, random).mod(ExtendedKey.CURVE.getN().subtract(BigInteger.ONE)).add(BigInteger.ONE);
+        this.publicKey = new ExtendedKey(privateKey, new byte[32]).getPublicKey();
+    }
+
+    public byte[] getPublicKey() {
+        return publicKey.clone();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    public int getPairingIndex() {
+        return pairingIndex;
+    }
+
+    public void close() {
+        open = false;
+        authenticated = false;
+        encKey = null;
+        macKey = null;
+        iv = null;
+    }
+
+    /**
+     * The X coordinate of the ECDH product of the card key and the given point.
+     */
+    public byte[] sharedSecret(byte[] hostPublicKey) {
+        ECPoint point = ExtendedKey.CURVE.getCurve().decodePoint(hostPublicKey).multiply(privateKey).normalize();
+        return BigIntegers.asUnsignedByteArray(SECRET_LENGTH, point.getAffineXCoord().toBigInteger());
+    }
+
+    /**
+     * Handles OPEN SECURE CHANNEL and returns the salt and IV to send back.
+     */
+    public byte[] open(int pairingIndex, byte[] pairingKey, byte[] hostPublicKey) {
+        close();
+
+        byte[] salt = new byte[SECRET_LENGTH];
+        random.nextBytes(salt);
+
+        byte[] keys = sha512(sharedSecret(hostPublicKey), pairingKey, salt);
+        this.encKey = Arrays.copyOf(keys, SECRET_LENGTH);
+        this.macKey = Arrays.copyOfRange(keys, SECRET_LENGTH, 2 * SECRET_LENGTH);
+        this.iv = new byte[BLOCK_SIZE];
+        random.nextBytes(iv);
+        this.pairingIndex = pairingIndex;
+        this.open = true;
+
+        byte[] out = Arrays.copyOf(salt, SECRET_LENGTH + BLOCK_SIZE);
+        System.arraycopy(iv, 0, out, SECRET_LENGTH, BLOCK_SIZE);
+
+        return out;
+    }
+
+    public void setAuthenticated() {
+        this.authenticated = true;
+    }
+
+    /**
+     * Verifies the MAC of a wrapped command and returns its plain data, or null if the MAC is invalid.
+     */
+    public byte[] unwrap(int cla, int ins, int p1, int p2, byte[] data) {
+        if (data == null || data.length < 2 * BLOCK_SIZE || data.length % BLOCK_SIZE != 0) {
+            return null;
+        }
+
+        byte[] mac = Arrays.copyOf(data, BLOCK_SIZE);
+        byte[] encrypted = Arrays.copyOfRange(data, BLOCK_SIZE, data.length);
+
+        byte[] meta = new byte[BLOCK_SIZE];
+        meta[0] = (byte) cla;
+        meta[1] = (byte) ins;
+        meta[2] = (byte) p1;
+        meta[3] = (byte) p2;
+        meta[4] = (byte) data.length;
+
+        if (!MessageDigest.isEqual(mac, mac(meta, encrypted))) {
+            return null;
+        }
+
+        byte[] plain;
+        try {
+            plain = crypt(false, encKey, iv, encrypted);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        iv = mac;
+
+        return plain;
+    }
+
+    /**
+     * Encrypts and MACs the response data followed by the status word, returning the data of the response APDU.
+     */
+    public byte[] wrap(byte[] data, int sw) {
+        byte[] plain = Arrays.copyOf(data, data.length + 2);
+        plain[data.length] = (byte) (sw >> 8);
+        plain[data.length + 1] = (byte) sw;
+
+        byte[] encrypted = crypt(true, encKey, iv, plain);
+
+        byte[] meta = new byte[BLOCK_SIZE];
+        meta[0] = (byte) (encrypted.length + BLOCK_SIZE);
+        iv = mac(meta, encrypted);
+
+        byte[] out = Arrays.copyOf(iv, BLOCK_SIZE + encrypted.length);
+        System.arraycopy(encrypted, 0, out, BLOCK_SIZE, encrypted.length);
+
+        return out;
+    }
+
+    /**
+     * Decrypts the data of the INIT command, sent before any pairing exists: the host public key, an IV and the
+     * secrets encrypted with the ECDH shared secret.
+     */
+    public byte[] decryptInit(byte[] data) {
+        int keyLength = data[0] & 0xff;
+        byte[] hostPublicKey = Arrays.copyOfRange(data, 1, 1 + keyLength);
+        byte[] initIV = Arrays.copyOfRange(data, 1 + keyLength, 1 + keyLength + BLOCK_SIZE);
+        byte[] encrypted = Arrays.copyOfRange(data, 1 + keyLength + BLOCK_SIZE, data.length);
+
+        return crypt(false, sharedSecret(hostPublicKey), initIV, encrypted);
+    }
+
+    private byte[] mac(byte[] meta, byte[] data) {
+        CBCBlockCipherMac mac = new CBCBlockCipherMac(new AESEngine(), 128, null);
+        mac.init(new KeyParameter(macKey));
+        mac.update(meta, 0, meta.length);
+        mac.update(data, 0, data.length);
+
+        byte[] out = new byte[BLOCK_SIZE];
+        mac.doFinal(out, 0);
+
+        return out;
+    }
+
+    private static byte[] crypt(boolean encrypt, byte[] key, byte[] iv, byte[] data) {
+        BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()), new ISO7816d4Padding());
+        cipher.init(encrypt, new ParametersWithIV(new KeyParameter(key), iv));
+
+        byte[] out = new byte[cipher.getOutputSize(data.length)];
+        int length = cipher.processBytes(data, 0, data.length, out, 0);
+
+        try {
+            length += cipher.doFinal(out, length);
+        } catch (InvalidCipherTextException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        return Arrays.copyOf(out, length);
+    }
+
+    static byte[] sha512(byte[]... parts) {
+        return digest("SHA-512", parts);
+    }
+
+    static byte[] sha256(byte[]... parts) {
+        return digest("SHA-256", parts);
+    }
+
+    private static byte[] digest(String algorithm, byte[]... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(algorithm);
+            for (byte[] part : parts) {
+                md.update(part);
+            }
+
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
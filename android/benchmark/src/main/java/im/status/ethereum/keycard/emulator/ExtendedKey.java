@@ -0,0 +1,106 @@
+package im.status.ethereum.keycard.emulator;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.util.BigIntegers;
+
+/**
+ * A BIP32 extended private key, as held by the emulated card.
+ */
+public class ExtendedKey {
+    public static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256k1");
+
+    private static final byte[] SEED_KEY = "Bitcoin seed".getBytes();
+
+    private final BigInteger privateKey;
+    private final byte[] chainCode;
+    private ECPoint publicKey;
+
+    public ExtendedKey(BigInteger privateKey, byte[] chainCode) {
+        this.privateKey = privateKey;
+        this.chainCode = chainCode;
+    }
+
+    public static ExtendedKey fromSeed(byte[] seed) {
+        byte[] i = hmac(SEED_KEY, seed);
+        return new ExtendedKey(new BigInteger(1, slice(i, 0, 32)), slice(i, 32, 32));
+    }
+
+    public ExtendedKey derive(int[] path) {
+        ExtendedKey key = this;
+
+        for (int index : path) {
+            key = key.child(index);
+        }
+
+        return key;
+    }
+
+    public ExtendedKey child(int index) {
+        byte[] data = new byte[37];
+
+        if (index < 0) {
+            System.arraycopy(getPrivateKey(), 0, data, 1, 32);
+        } else {
+            System.arraycopy(getPublicPoint().getEncoded(true), 0, data, 0, 33);
+        }
+
+        data[33] = (byte) (index >>> 24);
+        data[34] = (byte) (index >>> 16);
+        data[35] = (byte) (index >>> 8);
+        data[36] = (byte) index;
+
+        byte[] i = hmac(chainCode, data);
+        BigInteger k = new BigInteger(1, slice(i, 0, 32)).add(privateKey).mod(CURVE.getN());
+
+        return new ExtendedKey(k, slice(i, 32, 32));
+    }
+
+    public BigInteger getPrivateScalar() {
+        return privateKey;
+    }
+
+    public byte[] getPrivateKey() {
+        return BigIntegers.asUnsignedByteArray(32, privateKey);
+    }
+
+    public byte[] getChainCode() {
+        return chainCode.clone();
+    }
+
+    public ECPoint getPublicPoint() {
+        if (publicKey == null) {
+            publicKey = new FixedPointCombMultiplier().multiply(CURVE.getG(), privateKey).normalize();
+        }
+
+        return publicKey;
+    }
+
+    public byte[] getPublicKey() {
+        return getPublicPoint().getEncoded(false);
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data) {
+        HMac mac = new HMac(new SHA512Digest());
+        mac.init(new KeyParameter(key));
+        mac.update(data, 0, data.length);
+
+        byte[] out = new byte[64];
+        mac.doFinal(out, 0);
+
+        return out;
+    }
+
+    private static byte[] slice(byte[] data, int offset, int length) {
+        byte[] out = new byte[length];
+        System.arraycopy(data, offset, out, 0, length);
+        return out;
+    }
+}
@@ -0,0 +1,961 @@
+package im.status.ethereum.keycard.emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.engines.DESedeEngine;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.util.encoders.Hex;
+
+import im.status.keycard.applet.Metadata;
+import im.status.keycard.io.APDUCommand;
+import im.status.keycard.io.APDUResponse;
+import im.status.keycard.io.CardChannel;
+
+/**
+ * An in-process card with the Keycard applet, the Cash applet and a GlobalPlatform card manager, usable wherever a
+ * CardChannel is expected. It implements the commands used by this library: SELECT, pairing and the secure channel,
+ * INIT, PIN and PUK management, key loading, derivation, export and signing, mnemonic generation, card data,
+ * factory reset, Cash signing and the SCP02 delete/install path used as factory reset fallback.
+ *
+ * Faults can be scripted to exercise recovery code: the tag can be lost after a given number of commands, with or
+ * without the last command reaching the card, responses can be delayed and commands can be answered with an error
+ * status word. After a tag loss, reconnect() simulates the next tap: the persistent state of the card is kept while
+ * the selected applet, the secure channel and the PIN verification are reset.
+ *
+ * Emulators created with a seed are deterministic. Not thread-safe, like the channel of a real card.
+ */
+public class KeycardEmulator implements CardChannel {
+    public static final String TAG_LOST = "Tag was lost.";
+    public static final int MAX_PIN_RETRIES = 3;
+    public static final int MAX_PUK_RETRIES = 5;
+    public static final int PAIRING_SLOTS = 5;
+    public static final int APP_VERSION = 0x0301;
+
+    public static final byte[] KEYCARD_AID = Hex.decode("A000000804000101");
+    public static final byte[] CASH_AID = Hex.decode("A000000804000103");
+    public static final byte[] ISD_AID = Hex.decode("A000000151000000");
+    public static final byte[] ISD_AID_LEGACY = Hex.decode("A000000003000000");
+    public static final byte[] DEFAULT_GP_KEY = Hex.decode("404142434445464748494A4B4C4D4E4F");
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final ECDomainParameters DOMAIN = new ECDomainParameters(ExtendedKey.CURVE.getCurve(), ExtendedKey.CURVE.getG(), ExtendedKey.CURVE.getN(), ExtendedKey.CURVE.getH());
+
+    private static final int SW_OK = 0x9000;
+    private static final int SW_SECURITY_CONDITION_NOT_SATISFIED = 0x6982;
+    private static final int SW_AUTHENTICATION_METHOD_BLOCKED = 0x6983;
+    private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+    private static final int SW_WRONG_DATA = 0x6a80;
+    private static final int SW_FILE_NOT_FOUND = 0x6a82;
+    private static final int SW_NOT_ENOUGH_MEMORY = 0x6a84;
+    private static final int SW_INCORRECT_P1P2 = 0x6a86;
+    private static final int SW_REFERENCED_DATA_NOT_FOUND = 0x6a88;
+    private static final int SW_INS_NOT_SUPPORTED = 0x6d00;
+
+    private enum Applet { NONE, KEYCARD, CASH, ISD }
+
+    private static class Result {
+        final byte[] data;
+        final int sw;
+
+        Result(byte[] data, int sw) {
+            this.data = data;
+            this.sw = sw;
+        }
+    }
+
+    private final SecureRandom random;
+    private final byte[] instanceUID;
+    private final ExtendedKey cashKey;
+    private byte[] gpKey;
+
+    // Persistent state of the card
+    private CardSecureChannel secureChannel;
+    private boolean installed;
+    private boolean initialized;
+    private boolean factoryResetSupported;
+    private String pin;
+    private String puk;
+    private byte[] pairingSecret;
+    private byte[][] pairings;
+    private int pinRetries;
+    private int pukRetries;
+    private ExtendedKey master;
+    private int[] currentPath;
+    private byte[] publicData;
+    private int gpSequence;
+
+    // State of the current tap
+    private Applet selected;
+    private boolean pinVerified;
+    private byte[] pairingChallenge;
+
+    // Faults
+    private boolean connected;
+    private int disconnectAfter;
+    private boolean executeLost;
+    private long latencyNanos;
+    private int failIns;
+    private int failSw;
+    private int failTimes;
+    private long commands;
+
+    public KeycardEmulator() {
+        this(new SecureRandom());
+    }
+
+    public KeycardEmulator(long seed) {
+        this(seededRandom(seed));
+    }
+
+    private KeycardEmulator(SecureRandom random) {
+        this.random = random;
+        this.instanceUID = new byte[16];
+        this.random.nextBytes(instanceUID);
+
+        byte[] cashSeed = new byte[64];
+        this.random.nextBytes(cashSeed);
+        this.cashKey = ExtendedKey.fromSeed(cashSeed);
+
+        this.gpKey = DEFAULT_GP_KEY;
+        this.installed = true;
+        this.factoryResetSupported = true;
+        this.connected = true;
+        this.disconnectAfter = -1;
+        this.failIns = -1;
+        this.selected = Applet.NONE;
+
+        reset();
+    }
+
+    /**
+     * Initializes the applet with the given credentials, as the INIT command would.
+     */
+    public KeycardEmulator setup(String pin, String puk, byte[] pairingSecret) {
+        this.initialized = true;
+        this.pin = pin;
+        this.puk = puk;
+        this.pairingSecret = pairingSecret.clone();
+        this.pinRetries = MAX_PIN_RETRIES;
+        this.pukRetries = MAX_PUK_RETRIES;
+
+        return this;
+    }
+
+    /**
+     * Loads a master key derived from the given BIP39 seed, as the LOAD KEY command would.
+     */
+    public KeycardEmulator loadSeed(byte[] seed) {
+        this.master = ExtendedKey.fromSeed(seed);
+        this.currentPath = new int[0];
+
+        return this;
+    }
+
+    public void setFactoryResetSupported(boolean supported) {
+        this.factoryResetSupported = supported;
+    }
+
+    public void setGlobalPlatformKey(byte[] key) {
+        this.gpKey = key.clone();
+    }
+
+    public byte[] getInstanceUID() {
+        return instanceUID.clone();
+    }
+
+    public boolean isInitialized() {
+        return installed && initialized;
+    }
+
+    public boolean hasMasterKey() {
+        return master != null;
+    }
+
+    public int getPINRetryCount() {
+        return pinRetries;
+    }
+
+    public int[] getCurrentPath() {
+        return currentPath.clone();
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+
+    // Faults
+
+    /**
+     * Loses the tag after the given number of further commands. If executeLost is true, the command during which
+     * the tag is lost is executed by the card but its response never arrives, otherwise it never reaches the card.
+     */
+    public void disconnectAfter(int apdus, boolean executeLost) {
+        this.disconnectAfter = apdus;
+        this.executeLost = executeLost;
+    }
+
+    public void setLatencyMicros(int latencyMicros) {
+        this.latencyNanos = latencyMicros * 1000L;
+    }
+
+    /**
+     * Answers the next commands with the given INS (any INS if -1) with the given status word, without executing
+     * them.
+     */
+    public void failNext(int ins, int sw, int times) {
+        this.failIns = ins;
+        this.failSw = sw;
+        this.failTimes = times;
+    }
+
+    public void disconnect() {
+        this.connected = false;
+    }
+
+    /**
+     * Simulates a new tap of the same card.
+     */
+    public void reconnect() {
+        this.connected = true;
+        this.selected = Applet.NONE;
+        this.pinVerified = false;
+        this.pairingChallenge = null;
+        this.secureChannel.close();
+    }
+
+    // CardChannel
+
+    @Override
+    public APDUResponse send(APDUCommand cmd) throws IOException {
+        commands++;
+
+        if (!connected) {
+            throw new IOException(TAG_LOST);
+        }
+
+        if (disconnectAfter == 0) {
+            disconnectAfter = -1;
+            connected = false;
+
+            if (executeLost) {
+                process(cmd);
+            }
+
+            throw new IOException(TAG_LOST);
+        } else if (disconnectAfter > 0) {
+            disconnectAfter--;
+        }
+
+        if (latencyNanos > 0) {
+            long deadline = System.nanoTime() + latencyNanos;
+            while (System.nanoTime() - deadline < 0) {
+                // spin
+            }
+        }
+
+        if (failTimes > 0 && (failIns < 0 || failIns == (cmd.getIns() & 0xff))) {
+            failTimes--;
+            return response(new byte[0], failSw);
+        }
+
+        return process(cmd);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private APDUResponse process(APDUCommand cmd) {
+        if ((cmd.getCla() & 0xff) == 0x00 && (cmd.getIns() & 0xff) == 0xa4) {
+            return select(cmd.getData());
+        }
+
+        switch (selected) {
+            case KEYCARD:
+                return keycard(cmd);
+            case CASH:
+                return cash(cmd);
+            case ISD:
+                return cardManager(cmd);
+            default:
+                return response(new byte[0], SW_CONDITIONS_NOT_SATISFIED);
+        }
+    }
+
+    private APDUResponse select(byte[] aid) {
+        selected = Applet.NONE;
+        pinVerified = false;
+        secureChannel.close();
+
+        if (startsWith(aid, KEYCARD_AID)) {
+            if (!installed) {
+                return response(new byte[0], SW_FILE_NOT_FOUND);
+            }
+
+            selected = Applet.KEYCARD;
+            return response(applicationInfo(), SW_OK);
+        } else if (startsWith(aid, CASH_AID)) {
+            selected = Applet.CASH;
+            return response(tlv(0xa4, concat(tlv(0x80, cashKey.getPublicKey()), tlv(0x02, new byte[] { 0x01, 0x00 }))), SW_OK);
+        } else if (startsWith(aid, ISD_AID) || startsWith(aid, ISD_AID_LEGACY)) {
+            selected = Applet.ISD;
+            return response(tlv(0x6f, tlv(0x84, aid)), SW_OK);
+        }
+
+        return response(new byte[0], SW_FILE_NOT_FOUND);
+    }
+
+    private byte[] applicationInfo() {
+        if (!initialized) {
+            return tlv(0x80, secureChannel.getPublicKey());
+        }
+
+        int free = 0;
+        for (byte[] pairing : pairings) {
+            if (pairing == null) {
+                free++;
+            }
+        }
+
+        byte[] keyUID = master == null ? new byte[0] : CardSecureChannel.sha256(master.getPublicKey());
+        byte capabilities = (byte) (factoryResetSupported ? 0x1f : 0x0f);
+
+        return tlv(0xa4, concat(
+                tlv(0x8f, instanceUID),
+                tlv(0x80, secureChannel.getPublicKey()),
+                tlv(0x02, new byte[] { (byte) (APP_VERSION >> 8), (byte) APP_VERSION }),
+                tlv(0x02, new byte[] { (byte) free }),
+                tlv(0x8e, keyUID),
+                tlv(0x8d, new byte[] { capabilities })));
+    }
+
+    // Keycard applet
+
+    private APDUResponse keycard(APDUCommand cmd) {
+        int ins = cmd.getIns() & 0xff;
+        int p1 = cmd.getP1() & 0xff;
+        int p2 = cmd.getP2() & 0xff;
+        byte[] data = cmd.getData() == null ? new byte[0] : cmd.getData();
+
+        if (!initialized) {
+            if (ins == 0xfe) {
+                return init(data);
+            }
+
+            return response(new byte[0], SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        switch (ins) {
+            case 0xfd:
+                if (!factoryResetSupported) {
+                    return response(new byte[0], SW_INS_NOT_SUPPORTED);
+                }
+
+                if (p1 != 0xaa || p2 != 0x55) {
+                    return response(new byte[0], SW_INCORRECT_P1P2);
+                }
+
+                reset();
+                return response(new byte[0], SW_OK);
+            case 0x12:
+                return pair(p1, data);
+            case 0x10:
+                if (p1 >= PAIRING_SLOTS || pairings[p1] == null) {
+                    return response(new byte[0], SW_INCORRECT_P1P2);
+                }
+
+                pinVerified = false;
+                return response(secureChannel.open(p1, pairings[p1], data), SW_OK);
+            case 0x14:
+                return response(new byte[0], SW_INS_NOT_SUPPORTED);
+            case 0xca:
+                if (!secureChannel.isOpen()) {
+                    Result result = getData(p1);
+                    return response(result.data, result.sw);
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (!secureChannel.isOpen()) {
+            return response(new byte[0], SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] plain = secureChannel.unwrap(cmd.getCla(), ins, p1, p2, data);
+
+        if (plain == null) {
+            secureChannel.close();
+            return response(new byte[0], SW_SECURITY_CONDITION_NOT_SATISFIED);
+        }
+
+        Result result;
+
+        if (ins == 0x11) {
+            secureChannel.setAuthenticated();
+            result = ok(randomBytes(CardSecureChannel.SECRET_LENGTH));
+        } else if (!secureChannel.isAuthenticated()) {
+            result = error(SW_CONDITIONS_NOT_SATISFIED);
+        } else {
+            result = secured(ins, p1, p2, plain);
+        }
+
+        return response(secureChannel.wrap(result.data, result.sw), SW_OK);
+    }
+
+    private Result secured(int ins, int p1, int p2, byte[] data) {
+        switch (ins) {
+            case 0xf2:
+                return getStatus(p1);
+            case 0x20:
+                return verifyPIN(data);
+            case 0x22:
+                return unblockPIN(data);
+            case 0xd2:
+                return generateMnemonic(p1);
+            case 0xca:
+                return getData(p1);
+            default:
+                break;
+        }
+
+        if (!pinVerified) {
+            return error(SW_SECURITY_CONDITION_NOT_SATISFIED);
+        }
+
+        switch (ins) {
+            case 0x21:
+                return changeCredential(p1, data);
+            case 0xd0:
+                return loadKey(p1, data);
+            case 0xd1:
+                return deriveKey(p1, data);
+            case 0xd3:
+                master = null;
+                currentPath = new int[0];
+                return ok(new byte[0]);
+            case 0xc0:
+                return sign(p1, data);
+            case 0xc2:
+                return exportKey(p1, p2, data);
+            case 0xe2:
+                if (p1 == 0) {
+                    publicData = data.clone();
+                }
+                return ok(new byte[0]);
+            case 0x13:
+                if (p1 >= PAIRING_SLOTS) {
+                    return error(SW_INCORRECT_P1P2);
+                }
+
+                pairings[p1] = null;
+                return ok(new byte[0]);
+            default:
+                return error(SW_INS_NOT_SUPPORTED);
+        }
+    }
+
+    private APDUResponse init(byte[] data) {
+        byte[] plain;
+
+        try {
+            plain = secureChannel.decryptInit(data);
+        } catch (RuntimeException e) {
+            return response(new byte[0], SW_WRONG_DATA);
+        }
+
+        if (plain.length < 6 + 12 + 32) {
+            return response(new byte[0], SW_WRONG_DATA);
+        }
+
+        setup(new String(plain, 0, 6, ASCII), new String(plain, 6, 12, ASCII), Arrays.copyOfRange(plain, 18, 50));
+        return response(new byte[0], SW_OK);
+    }
+
+    private APDUResponse pair(int p1, byte[] data) {
+        if (p1 == 0) {
+            if (data.length != 32) {
+                return response(new byte[0], SW_WRONG_DATA);
+            }
+
+            pairingChallenge = randomBytes(32);
+            return response(concat(CardSecureChannel.sha256(pairingSecret, data), pairingChallenge), SW_OK);
+        }
+
+        if (p1 != 1 || pairingChallenge == null) {
+            return response(new byte[0], SW_INCORRECT_P1P2);
+        }
+
+        byte[] expected = CardSecureChannel.sha256(pairingSecret, pairingChallenge);
+        pairingChallenge = null;
+
+        if (!Arrays.equals(expected, data)) {
+            return response(new byte[0], SW_SECURITY_CONDITION_NOT_SATISFIED);
+        }
+
+        for (int i = 0; i < PAIRING_SLOTS; i++) {
+            if (pairings[i] == null) {
+                byte[] salt = randomBytes(32);
+                pairings[i] = CardSecureChannel.sha256(pairingSecret, salt);
+                return response(concat(new byte[] { (byte) i }, salt), SW_OK);
+            }
+        }
+
+        return response(new byte[0], SW_NOT_ENOUGH_MEMORY);
+    }
+
+    private Result getStatus(int p1) {
+        if (p1 == 0) {
+            return ok(tlv(0xa3, concat(
+                    tlv(0x02, new byte[] { (byte) pinRetries }),
+                    tlv(0x02, new byte[] { (byte) pukRetries }),
+                    tlv(0x01, new byte[] { (byte) (master != null ? 0xff : 0x00) }))));
+        } else if (p1 == 1) {
+            return ok(encodePath(currentPath));
+        }
+
+        return error(SW_INCORRECT_P1P2);
+    }
+
+    private Result getData(int p1) {
+        return p1 == 0 ? ok(publicData.clone()) : ok(new byte[0]);
+    }
+
+    private Result verifyPIN(byte[] data) {
+        if (pinRetries == 0) {
+            return error(0x63c0);
+        }
+
+        if (pin.equals(new String(data, ASCII))) {
+            pinRetries = MAX_PIN_RETRIES;
+            pinVerified = true;
+            return ok(new byte[0]);
+        }
+
+        pinRetries--;
+        pinVerified = false;
+        return error(0x63c0 | pinRetries);
+    }
+
+    private Result unblockPIN(byte[] data) {
+        if (pinRetries > 0) {
+            return error(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        if (pukRetries == 0) {
+            return error(SW_AUTHENTICATION_METHOD_BLOCKED);
+        }
+
+        if (data.length != 18) {
+            return error(SW_WRONG_DATA);
+        }
+
+        if (!puk.equals(new String(data, 0, 12, ASCII))) {
+            pukRetries--;
+            return error(0x63c0 | pukRetries);
+        }
+
+        pin = new String(data, 12, 6, ASCII);
+        pinRetries = MAX_PIN_RETRIES;
+        pukRetries = MAX_PUK_RETRIES;
+        pinVerified = true;
+
+        return ok(new byte[0]);
+    }
+
+    private Result changeCredential(int p1, byte[] data) {
+        switch (p1) {
+            case 0:
+                pin = new String(data, ASCII);
+                return ok(new byte[0]);
+            case 1:
+                puk = new String(data, ASCII);
+                return ok(new byte[0]);
+            case 2:
+                pairingSecret = data.clone();
+                return ok(new byte[0]);
+            default:
+                return error(SW_INCORRECT_P1P2);
+        }
+    }
+
+    private Result loadKey(int p1, byte[] data) {
+        if (p1 == 0x03) {
+            if (data.length != 64) {
+                return error(SW_WRONG_DATA);
+            }
+
+            loadSeed(data);
+        } else if (p1 == 0x01 || p1 == 0x02) {
+            byte[] privateKey = findTag(data, 0x81);
+            byte[] chainCode = findTag(data, 0x82);
+
+            if (privateKey == null) {
+                return error(SW_WRONG_DATA);
+            }
+
+            master = new ExtendedKey(new BigInteger(1, privateKey), chainCode == null ? new byte[32] : chainCode);
+            currentPath = new int[0];
+        } else {
+            return error(SW_INCORRECT_P1P2);
+        }
+
+        return ok(CardSecureChannel.sha256(master.getPublicKey()));
+    }
+
+    private Result deriveKey(int p1, byte[] data) {
+        int[] path = resolvePath(p1, data);
+
+        if (master == null || path == null) {
+            return error(master == null ? SW_CONDITIONS_NOT_SATISFIED : SW_WRONG_DATA);
+        }
+
+        currentPath = path;
+        return ok(new byte[0]);
+    }
+
+    private Result generateMnemonic(int checksumBits) {
+        if (checksumBits < 4 || checksumBits > 8) {
+            return error(SW_INCORRECT_P1P2);
+        }
+
+        int entropyBytes = checksumBits * 4;
+        int words = checksumBits * 3;
+        byte[] entropy = randomBytes(entropyBytes);
+        byte[] bits = concat(entropy, CardSecureChannel.sha256(entropy));
+        byte[] out = new byte[words * 2];
+
+        for (int w = 0; w < words; w++) {
+            int index = 0;
+
+            for (int b = 0; b < 11; b++) {
+                int pos = w * 11 + b;
+                index = (index << 1) | ((bits[pos / 8] >> (7 - pos % 8)) & 1);
+            }
+
+            out[w * 2] = (byte) (index >> 8);
+            out[w * 2 + 1] = (byte) index;
+        }
+
+        return ok(out);
+    }
+
+    private Result sign(int p1, byte[] data) {
+        int mode = p1 & 0x03;
+
+        if (master == null || data.length < 32 || mode == 0x03) {
+            return error(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        byte[] hash = Arrays.copyOf(data, 32);
+        int[] path = mode == 0 ? currentPath : resolvePath(p1, Arrays.copyOfRange(data, 32, data.length));
+
+        if (path == null) {
+            return error(SW_WRONG_DATA);
+        }
+
+        if (mode == 0x02) {
+            currentPath = path;
+        }
+
+        return ok(signature(master.derive(path), hash));
+    }
+
+    private Result exportKey(int p1, int p2, byte[] data) {
+        int mode = p1 & 0x03;
+
+        if (master == null) {
+            return error(SW_CONDITIONS_NOT_SATISFIED);
+        }
+
+        int[] path = mode == 0 ? currentPath : resolvePath(p1, data);
+
+        if (path == null) {
+            return error(SW_WRONG_DATA);
+        }
+
+        ExtendedKey key = master.derive(path);
+        byte[] content;
+
+        if (p2 == 0x00) {
+            if (!isEIP1581(path)) {
+                return error(SW_INCORRECT_P1P2);
+            }
+
+            content = concat(tlv(0x80, key.getPublicKey()), tlv(0x81, key.getPrivateKey()));
+        } else if (p2 == 0x01) {
+            content = tlv(0x80, key.getPublicKey());
+        } else if (p2 == 0x02) {
+            content = concat(tlv(0x80, key.getPublicKey()), tlv(0x82, key.getChainCode()));
+        } else {
+            return error(SW_INCORRECT_P1P2);
+        }
+
+        if (mode == 0x02) {
+            currentPath = path;
+        }
+
+        return ok(tlv(0xa1, content));
+    }
+
+    // Cash applet
+
+    private APDUResponse cash(APDUCommand cmd) {
+        byte[] data = cmd.getData();
+
+        if ((cmd.getIns() & 0xff) != 0xc0) {
+            return response(new byte[0], SW_INS_NOT_SUPPORTED);
+        }
+
+        if (data == null || data.length != 32) {
+            return response(new byte[0], SW_WRONG_DATA);
+        }
+
+        return response(signature(cashKey, data), SW_OK);
+    }
+
+    // GlobalPlatform card manager. Commands after INITIALIZE UPDATE carry a C-MAC which is not verified.
+
+    private APDUResponse cardManager(APDUCommand cmd) {
+        switch (cmd.getIns() & 0xff) {
+            case 0x50:
+                return initializeUpdate(cmd.getData());
+            case 0x82:
+                return response(new byte[0], SW_OK);
+            case 0xe4:
+                if (!installed) {
+                    return response(new byte[0], SW_REFERENCED_DATA_NOT_FOUND);
+                }
+
+                installed = false;
+                reset();
+                return response(new byte[0], SW_OK);
+            case 0xe6:
+                installed = true;
+                reset();
+                return response(new byte[0], SW_OK);
+            default:
+                return response(new byte[0], SW_INS_NOT_SUPPORTED);
+        }
+    }
+
+    private APDUResponse initializeUpdate(byte[] hostChallenge) {
+        if (hostChallenge == null || hostChallenge.length != 8) {
+            return response(new byte[0], SW_WRONG_DATA);
+        }
+
+        gpSequence++;
+        byte[] sequence = new byte[] { (byte) (gpSequence >> 8), (byte) gpSequence };
+        byte[] cardChallenge = concat(sequence, randomBytes(6));
+
+        byte[] derivation = new byte[16];
+        derivation[0] = 0x01;
+        derivation[1] = (byte) 0x82;
+        derivation[2] = sequence[0];
+        derivation[3] = sequence[1];
+        byte[] sessionEncKey = des3(gpKey, derivation);
+
+        byte[] cryptogramData = concat(hostChallenge, cardChallenge, Hex.decode("8000000000000000"));
+        byte[] cryptogram = des3(sessionEncKey, cryptogramData);
+
+        byte[] out = concat(new byte[10], new byte[] { 0x01, 0x02 }, cardChallenge, Arrays.copyOfRange(cryptogram, cryptogram.length - 8, cryptogram.length));
+        return response(out, SW_OK);
+    }
+
+    // Helpers
+
+    private void reset() {
+        this.secureChannel = new CardSecureChannel(random);
+        this.initialized = false;
+        this.pin = null;
+        this.puk = null;
+        this.pairingSecret = null;
+        this.pairings = new byte[PAIRING_SLOTS][];
+        this.pinRetries = 0;
+        this.pukRetries = 0;
+        this.master = null;
+        this.currentPath = new int[0];
+        this.publicData = new Metadata("").toByteArray();
+        this.pinVerified = false;
+    }
+
+    private int[] resolvePath(int p1, byte[] data) {
+        if (data.length % 4 != 0) {
+            return null;
+        }
+
+        int[] base;
+
+        switch (p1 & 0xc0) {
+            case 0x00:
+                base = new int[0];
+                break;
+            case 0x40:
+                base = Arrays.copyOf(currentPath, Math.max(0, currentPath.length - 1));
+                break;
+            case 0x80:
+                base = currentPath;
+                break;
+            default:
+                return null;
+        }
+
+        int[] path = Arrays.copyOf(base, base.length + data.length / 4);
+
+        for (int i = 0; i < data.length / 4; i++) {
+            path[base.length + i] = ((data[i * 4] & 0xff) << 24) | ((data[i * 4 + 1] & 0xff) << 16) | ((data[i * 4 + 2] & 0xff) << 8) | (data[i * 4 + 3] & 0xff);
+        }
+
+        return path;
+    }
+
+    private static byte[] encodePath(int[] path) {
+        byte[] out = new byte[path.length * 4];
+
+        for (int i = 0; i < path.length; i++) {
+            out[i * 4] = (byte) (path[i] >>> 24);
+            out[i * 4 + 1] = (byte) (path[i] >>> 16);
+            out[i * 4 + 2] = (byte) (path[i] >>> 8);
+            out[i * 4 + 3] = (byte) path[i];
+        }
+
+        return out;
+    }
+
+    // Private keys may only be exported for m/43'/60'/1581'/...
+    private static boolean isEIP1581(int[] path) {
+        return path.length > 3 && path[0] == (0x80000000 | 43) && path[1] == (0x80000000 | 60) && path[2] == (0x80000000 | 1581);
+    }
+
+    private static byte[] signature(ExtendedKey key, byte[] hash) {
+        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+        signer.init(true, new ECPrivateKeyParameters(key.getPrivateScalar(), DOMAIN));
+        BigInteger[] rs = signer.generateSignature(hash);
+
+        BigInteger s = rs[1];
+        if (s.compareTo(DOMAIN.getN().shiftRight(1)) > 0) {
+            s = DOMAIN.getN().subtract(s);
+        }
+
+        try {
+            byte[] der = new DERSequence(new ASN1Encodable[] { new ASN1Integer(rs[0]), new ASN1Integer(s) }).getEncoded();
+            return tlv(0xa0, concat(tlv(0x80, key.getPublicKey()), der));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Triple DES in CBC mode with a zero IV over the given block aligned data, with a two key 3DES key.
+    private static byte[] des3(byte[] key, byte[] data) {
+        byte[] key24 = concat(key, Arrays.copyOf(key, 8));
+        CBCBlockCipher cipher = new CBCBlockCipher(new DESedeEngine());
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key24), new byte[8]));
+
+        byte[] out = new byte[data.length];
+        for (int i = 0; i < data.length; i += 8) {
+            cipher.processBlock(data, i, out, i);
+        }
+
+        return out;
+    }
+
+    private static byte[] findTag(byte[] tlv, int tag) {
+        int i = 0;
+
+        while (i + 1 < tlv.length) {
+            int t = tlv[i++] & 0xff;
+            int length = tlv[i++] & 0xff;
+
+            if (length == 0x81) {
+                length = tlv[i++] & 0xff;
+            }
+
+            if (t == tag) {
+                return Arrays.copyOfRange(tlv, i, i + length);
+            }
+
+            // Constructed tags are entered, primitive ones skipped
+            if ((t & 0x20) == 0) {
+                i += length;
+            }
+        }
+
+        return null;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] out = new byte[length];
+        random.nextBytes(out);
+        return out;
+    }
+
+    private static Result ok(byte[] data) {
+        return new Result(data, SW_OK);
+    }
+
+    private static Result error(int sw) {
+        return new Result(new byte[0], sw);
+    }
+
+    private static APDUResponse response(byte[] data, int sw) {
+        byte[] apdu = Arrays.copyOf(data, data.length + 2);
+        apdu[data.length] = (byte) (sw >> 8);
+        apdu[data.length + 1] = (byte) sw;
+
+        return new APDUResponse(apdu);
+    }
+
+    static byte[] tlv(int tag, byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+
+        if (value.length > 0x7f) {
+            out.write(0x81);
+        }
+
+        out.write(value.length);
+        out.write(value, 0, value.length);
+
+        return out.toByteArray();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data != null && data.length >= prefix.length && Arrays.equals(Arrays.copyOf(data, prefix.length), prefix);
+    }
+
+    private static SecureRandom seededRandom(long seed) {
+        try {
+            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            random.setSeed(seed);
+            return random;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
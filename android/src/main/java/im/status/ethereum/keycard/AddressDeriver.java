@@ -0,0 +1,181 @@
+package im.status.ethereum.keycard;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Derives non-hardened BIP32 children of an extended public key on the host, without involving the card. Ranges
+ * are split in chunks which are derived in parallel. The generator multiplication uses a fixed-point comb whose
+ * precomputed table is shared by all derivations.
+ */
+public class AddressDeriver {
+    public static final int MAX_COUNT = 10000;
+
+    private static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256k1");
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    private final ExecutorService pool;
+    private final int parallelism;
+
+    public AddressDeriver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public AddressDeriver(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "KeycardDerivation");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public static class DerivedKey {
+        public final int index;
+        public final byte[] publicKey;
+        public final byte[] address;
+
+        DerivedKey(int index, byte[] publicKey, byte[] address) {
+            this.index = index;
+            this.publicKey = publicKey;
+            this.address = address;
+        }
+    }
+
+    /**
+     * Derives the children start to start + count - 1 of the given public key and chain code. Indexes which do not
+     * produce a valid key, as allowed by BIP32, are left null in the returned array.
+     */
+    public DerivedKey[] derive(byte[] parentPublicKey, final byte[] chainCode, final int start, int count) throws InterruptedException {
+        if (chainCode.length != 32) {
+            throw new IllegalArgumentException("Invalid chain code");
+        }
+
+        if (start < 0 || count < 0 || count > MAX_COUNT || start > Integer.MAX_VALUE - count) {
+            throw new IllegalArgumentException("Invalid index range");
+        }
+
+        final ECPoint parent = CURVE.getCurve().decodePoint(parentPublicKey).normalize();
+        final byte[] parentCompressed = parent.getEncoded(true);
+        final DerivedKey[] keys = new DerivedKey[count];
+
+        int chunks = Math.min(parallelism, (count + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+
+        if (chunks <= 1) {
+            new Worker(parent, parentCompressed, chainCode).derive(keys, start, 0, count);
+            return keys;
+        }
+
+        int chunkSize = (count + chunks - 1) / chunks;
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+
+        for (int from = 0; from < count; from += chunkSize) {
+            final int offset = from;
+            final int length = Math.min(chunkSize, count - from);
+
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    new Worker(parent, parentCompressed, chainCode).derive(keys, start, offset, length);
+                    return null;
+                }
+            });
+        }
+
+        for (Future<Void> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        return keys;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Holds the digests and buffers used by a single thread, so they are allocated once per chunk instead of once
+    // per key.
+    private static class Worker {
+        private final ECPoint parent;
+        private final HMac hmac;
+        private final KeccakDigest keccak;
+        private final ECMultiplier multiplier;
+        private final byte[] data;
+        private final byte[] i;
+        private final byte[] il;
+        private final byte[] hash;
+
+        Worker(ECPoint parent, byte[] parentCompressed, byte[] chainCode) {
+            this.parent = parent;
+            this.hmac = new HMac(new SHA512Digest());
+            this.hmac.init(new KeyParameter(chainCode));
+            this.keccak = new KeccakDigest(256);
+            this.multiplier = new FixedPointCombMultiplier();
+            this.data = new byte[37];
+            this.i = new byte[64];
+            this.il = new byte[32];
+            this.hash = new byte[32];
+
+            System.arraycopy(parentCompressed, 0, data, 0, 33);
+        }
+
+        void derive(DerivedKey[] out, int start, int offset, int length) {
+            for (int n = offset; n < offset + length; n++) {
+                out[n] = deriveChild(start + n);
+            }
+        }
+
+        DerivedKey deriveChild(int index) {
+            data[33] = (byte) (index >>> 24);
+            data[34] = (byte) (index >>> 16);
+            data[35] = (byte) (index >>> 8);
+            data[36] = (byte) index;
+
+            hmac.update(data, 0, data.length);
+            hmac.doFinal(i, 0);
+            System.arraycopy(i, 0, il, 0, 32);
+
+            BigInteger k = new BigInteger(1, il);
+            if (k.compareTo(CURVE.getN()) >= 0) {
+                return null;
+            }
+
+            ECPoint child = multiplier.multiply(CURVE.getG(), k).add(parent).normalize();
+            if (child.isInfinity()) {
+                return null;
+            }
+
+            byte[] publicKey = child.getEncoded(false);
+
+            keccak.update(publicKey, 1, publicKey.length - 1);
+            keccak.doFinal(hash, 0);
+
+            byte[] address = new byte[20];
+            System.arraycopy(hash, 12, address, 0, 20);
+
+            return new DerivedKey(index, publicKey, address);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package im.status.ethereum.keycard;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs card operations one at a time on a single worker thread, so that only one operation talks to the card
+ * channel at any given moment. Operations are executed in priority order and FIFO within the same priority. The
+ * queue is bounded: submissions beyond its capacity are rejected instead of piling up behind a slow card.
+ */
+public class CardExecutor {
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final String TAG = "CardExecutor";
+
+    private final PriorityBlockingQueue<Task> queue;
+    private final int capacity;
+    private final Thread worker;
+    private volatile boolean running;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public CardExecutor() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CardExecutor(int capacity) {
+        this.capacity = capacity;
+        this.queue = new PriorityBlockingQueue<>(capacity);
+        this.running = true;
+        this.worker = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "KeycardWorker");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues an operation. Returns false if the executor is shut down or the queue is full, in which case the
+     * operation will never run and the caller is responsible for reporting the rejection.
+     */
+    public boolean submit(int priority, Runnable operation) {
+        if (!running) {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        int current;
+        do {
+            current = depth.get();
+            if (current >= capacity) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!depth.compareAndSet(current, current + 1));
+
+        updateMax(maxDepth, current + 1);
+        Task task = new Task(priority, sequence.getAndIncrement(), operation);
+        queue.offer(task);
+
+        // A shutdown which drained the queue before the task was added would leave it there forever.
+        if (!running && queue.remove(task)) {
+            depth.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops the worker once the operation in progress, if any, returns. Returns the operations which were still
+     * queued and will never run, in the order they would have run, so that the caller can report them.
+     */
+    public List<Runnable> shutdown() {
+        running = false;
+        worker.interrupt();
+
+        ArrayList<Task> tasks = new ArrayList<>();
+        queue.drainTo(tasks);
+        depth.addAndGet(-tasks.size());
+        Collections.sort(tasks);
+
+        List<Runnable> operations = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            operations.add(task.operation);
+        }
+
+        return operations;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = completed.get();
+        return count == 0 ? 0 : (totalWaitNanos.get() / (double) count) / 1000000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000.0;
+    }
+
+    private void loop() {
+        while (running) {
+            Task task;
+
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            depth.decrementAndGet();
+
+            long wait = System.nanoTime() - task.enqueuedAt;
+            totalWaitNanos.addAndGet(wait);
+            updateMax(maxWaitNanos, wait);
+
+            try {
+                task.operation.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "card operation failed", e);
+            }
+
+            completed.incrementAndGet();
+        }
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        do {
+            current = max.get();
+            if (value <= current) {
+                return;
+            }
+        } while (!max.compareAndSet(current, value));
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        do {
+            current = max.get();
+            if (value <= current) {
+                return;
+            }
+        } while (!max.compareAndSet(current, value));
+    }
+
+    private static class Task implements Comparable<Task> {
+        final int priority;
+        final long sequence;
+        final long enqueuedAt;
+        final Runnable operation;
+
+        Task(int priority, long sequence, Runnable operation) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedAt = System.nanoTime();
+            this.operation = operation;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
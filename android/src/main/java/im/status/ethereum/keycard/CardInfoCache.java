@@ -0,0 +1,65 @@
+package im.status.ethereum.keycard;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The parts of the application info which cost extra commands to read (card name, authenticity, pairing state and
+ * retry counters), cached by instance UID. An entry is only valid for the key UID it was read with, and is dropped
+ * by any operation which may change one of its values.
+ */
+public class CardInfoCache {
+    public static final int MAX_PIN_RETRIES = 3;
+
+    private final ConcurrentHashMap<String, Entry> entries;
+
+    public CardInfoCache() {
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    public static class Entry {
+        public final String keyUID;
+        public final String cardName;
+        public final boolean authentic;
+        public final boolean paired;
+        public final int pinRetryCount;
+        public final int pukRetryCount;
+
+        public Entry(String keyUID, String cardName, boolean authentic, boolean paired, int pinRetryCount, int pukRetryCount) {
+            this.keyUID = keyUID;
+            this.cardName = cardName;
+            this.authentic = authentic;
+            this.paired = paired;
+            this.pinRetryCount = pinRetryCount;
+            this.pukRetryCount = pukRetryCount;
+        }
+    }
+
+    public Entry get(String instanceUID, String keyUID) {
+        Entry entry = entries.get(instanceUID);
+        return (entry != null && entry.keyUID.equals(keyUID)) ? entry : null;
+    }
+
+    public void put(String instanceUID, Entry entry) {
+        entries.put(instanceUID, entry);
+    }
+
+    public void invalidate(String instanceUID) {
+        entries.remove(instanceUID);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Keeps the PIN retry counter consistent after a PIN verification: a failure decrements it and a success resets
+     * it to its maximum, so the entry is dropped unless the cached value is already the right one.
+     */
+    public void pinVerified(String instanceUID, boolean success) {
+        Entry entry = entries.get(instanceUID);
+
+        if (entry != null && (!success || entry.pinRetryCount != MAX_PIN_RETRIES)) {
+            entries.remove(instanceUID);
+        }
+    }
+}
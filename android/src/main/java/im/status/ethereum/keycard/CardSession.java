@@ -0,0 +1,138 @@
+package im.status.ethereum.keycard;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.io.CardChannel;
+
+/**
+ * A secure channel opened with the Keycard applet of the card currently in the field. As long as the session is
+ * alive its command set can be used directly, without selecting the applet and opening the secure channel again.
+ *
+ * A session can additionally hold an authentication lease: once the PIN has been verified, up to a given number of
+ * operations presenting the same PIN within a given time are allowed to skip the VERIFY PIN command.
+ *
+ * The session holds the PIN verified over it only while it is needed: while a lease is active, to check the PIN
+ * presented by the next operations, and during the operation which verified it, so that the PIN can be verified
+ * again when the secure channel has to be reopened in the middle of the operation. The PIN is wiped when neither
+ * needs it any more and when the session is closed.
+ */
+public class CardSession {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CardChannel channel;
+    private final KeycardCommandSet cmdSet;
+    private final String instanceUID;
+
+    private byte[] pin;
+    private boolean authenticated;
+    private boolean leased;
+    private int leaseOpsLeft;
+    private long leaseExpiry;
+
+    public CardSession(CardChannel channel, KeycardCommandSet cmdSet, String instanceUID) {
+        this.channel = channel;
+        this.cmdSet = cmdSet;
+        this.instanceUID = instanceUID;
+    }
+
+    public boolean isBoundTo(CardChannel channel) {
+        return this.channel == channel;
+    }
+
+    public KeycardCommandSet getCommandSet() {
+        return cmdSet;
+    }
+
+    public String getInstanceUID() {
+        return instanceUID;
+    }
+
+    /**
+     * Called when an operation starts using the session: the PIN of the previous operation is no longer needed,
+     * unless a lease is active.
+     */
+    public void beginOperation() {
+        authenticated = false;
+
+        if (!hasLease()) {
+            wipePin();
+        }
+    }
+
+    /**
+     * Records that the operation in progress verified the given PIN, or was allowed to skip it by the lease.
+     */
+    public void setAuthenticated(String pin) {
+        if (this.pin == null || !MessageDigest.isEqual(this.pin, encode(pin))) {
+            wipePin();
+            this.pin = encode(pin);
+        }
+
+        this.authenticated = true;
+    }
+
+    /**
+     * The PIN verified by the operation in progress, or null if it did not verify one.
+     */
+    public String getOperationPin() {
+        return authenticated && pin != null ? new String(pin, UTF_8) : null;
+    }
+
+    public void beginLease(String pin, int maxOps, long ttlMs) {
+        setAuthenticated(pin);
+        this.leased = true;
+        this.leaseOpsLeft = maxOps;
+        this.leaseExpiry = System.nanoTime() + ttlMs * 1000000L;
+    }
+
+    public void endLease() {
+        this.leased = false;
+        this.leaseOpsLeft = 0;
+
+        if (!authenticated) {
+            wipePin();
+        }
+    }
+
+    public boolean hasLease() {
+        if (leased && (leaseOpsLeft <= 0 || System.nanoTime() - leaseExpiry > 0)) {
+            endLease();
+        }
+
+        return leased;
+    }
+
+    /**
+     * Consumes one operation from the lease if it is still valid and was granted for the given PIN.
+     */
+    public boolean useLease(String pin) {
+        if (!hasLease() || !MessageDigest.isEqual(this.pin, encode(pin))) {
+            return false;
+        }
+
+        leaseOpsLeft--;
+        return true;
+    }
+
+    /**
+     * Ends the lease and wipes the PIN. The session must not be used afterwards.
+     */
+    public void close() {
+        authenticated = false;
+        endLease();
+    }
+
+    private void wipePin() {
+        if (pin != null) {
+            Arrays.fill(pin, (byte) 0);
+            pin = null;
+        }
+    }
+
+    private static byte[] encode(String pin) {
+        return pin.getBytes(UTF_8);
+    }
+}
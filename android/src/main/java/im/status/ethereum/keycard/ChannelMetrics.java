@@ -0,0 +1,102 @@
+package im.status.ethereum.keycard;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-command statistics of the APDUs exchanged with the card, indexed by INS byte. All values are kept in a
+ * single AtomicLongArray, so recording an exchange neither locks nor allocates.
+ *
+ * Latencies are recorded in a histogram with power of two buckets in milliseconds: bucket 0 holds exchanges below
+ * 1 ms, bucket i those from 2^(i-1) ms to 2^i ms, and the last bucket everything above.
+ */
+public class ChannelMetrics {
+    public static final int BUCKETS = 12;
+
+    static final int COUNT = 0;
+    static final int TOTAL_NANOS = 1;
+    static final int MAX_NANOS = 2;
+    static final int BYTES_SENT = 3;
+    static final int BYTES_RECEIVED = 4;
+    static final int SW_OK = 5;
+    static final int SW_WARNING = 6;
+    static final int SW_ERROR = 7;
+    static final int IO_ERRORS = 8;
+    static final int SECURED = 9;
+    // The slowest exchange which got a response, unlike MAX_NANOS which also counts the ones which failed.
+    static final int MAX_RESPONSE_NANOS = 10;
+    static final int HISTOGRAM = 11;
+    static final int FIELDS = HISTOGRAM + BUCKETS;
+
+    private static final int COMMANDS = 256;
+
+    private final AtomicLongArray values;
+
+    public ChannelMetrics() {
+        this.values = new AtomicLongArray(COMMANDS * FIELDS);
+    }
+
+    public void record(int ins, long nanos, int bytesSent, int bytesReceived, int sw, boolean secured) {
+        int base = (ins & 0xff) * FIELDS;
+
+        values.incrementAndGet(base + COUNT);
+        values.addAndGet(base + TOTAL_NANOS, nanos);
+        values.addAndGet(base + BYTES_SENT, bytesSent);
+        values.addAndGet(base + BYTES_RECEIVED, bytesReceived);
+        values.incrementAndGet(base + HISTOGRAM + bucket(nanos));
+        updateMax(base + MAX_NANOS, nanos);
+        updateMax(base + MAX_RESPONSE_NANOS, nanos);
+
+        if (sw == 0x9000) {
+            values.incrementAndGet(base + SW_OK);
+        } else if ((sw >> 8) == 0x62 || (sw >> 8) == 0x63) {
+            values.incrementAndGet(base + SW_WARNING);
+        } else {
+            values.incrementAndGet(base + SW_ERROR);
+        }
+
+        if (secured) {
+            values.incrementAndGet(base + SECURED);
+        }
+    }
+
+    public void recordError(int ins, long nanos, int bytesSent) {
+        int base = (ins & 0xff) * FIELDS;
+
+        values.incrementAndGet(base + COUNT);
+        values.incrementAndGet(base + IO_ERRORS);
+        values.addAndGet(base + TOTAL_NANOS, nanos);
+        values.addAndGet(base + BYTES_SENT, bytesSent);
+        values.incrementAndGet(base + HISTOGRAM + bucket(nanos));
+        updateMax(base + MAX_NANOS, nanos);
+    }
+
+    public long get(int ins, int field) {
+        return values.get((ins & 0xff) * FIELDS + field);
+    }
+
+    public void reset() {
+        for (int i = 0; i < values.length(); i++) {
+            values.set(i, 0);
+        }
+    }
+
+    /**
+     * The upper bound in milliseconds of the given histogram bucket, or -1 for the last, unbounded one.
+     */
+    public static long bucketBound(int bucket) {
+        return bucket == BUCKETS - 1 ? -1 : (1L << bucket);
+    }
+
+    private static int bucket(long nanos) {
+        long ms = nanos / 1000000L;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+    }
+
+    private void updateMax(int index, long value) {
+        long current = values.get(index);
+
+        while (value > current && !values.compareAndSet(index, current, value)) {
+            current = values.get(index);
+        }
+    }
+}
@@ -1,48 +1,186 @@
 package im.status.ethereum.keycard;
 
 import android.os.Handler;
-import android.os.Looper;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
 import javax.annotation.Nullable;
 
+/**
+ * Delivers events to JS from a dedicated thread, never from the caller's or the main thread. Events are flushed at
+ * most once per frame: the first event after a quiet period goes out immediately, later ones are held until the
+ * frame window has elapsed and then emitted one after the other, in the order they were raised. Progress events are
+ * coalesced: only the latest value of each progress event within a window is sent, at the position of that latest
+ * value.
+ */
 public class EventEmitter {
-    private ReactContext reactContext;
+    static final long FRAME_MS = 16;
+
+    private static final Object DELAYED = new Object();
+
+    private static class Event {
+        final String name;
+        final WritableMap params;
+        final double progress;
+        final boolean isProgress;
+
+        // Set when a later value of the same progress event was raised within the window.
+        boolean superseded;
+
+        Event(String name, WritableMap params) {
+            this.name = name;
+            this.params = params;
+            this.progress = 0;
+            this.isProgress = false;
+        }
+
+        Event(String name, double progress) {
+            this.name = name;
+            this.params = null;
+            this.progress = progress;
+            this.isProgress = true;
+        }
+    }
+
+    private final ReactContext reactContext;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Object lock = new Object();
 
-    final Handler handler = new Handler(Looper.getMainLooper());
+    private ArrayList<Event> pending = new ArrayList<>();
+    private HashMap<String, Event> progress = new HashMap<>();
+    private boolean scheduled = false;
+    private long lastFlush = 0;
+
+    // Only accessed on the emission thread.
+    private DeviceEventManagerModule.RCTDeviceEventEmitter jsModule;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
 
     public EventEmitter(ReactContext reactContext) {
        this.reactContext = reactContext;
+       this.thread = new HandlerThread("KeycardEvents");
+       this.thread.start();
+       this.handler = new Handler(thread.getLooper());
     }
 
     public void emit(String eventName, @Nullable WritableMap params) {
-        reactContext
-                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName, params);
+        synchronized(lock) {
+            pending.add(new Event(eventName, params));
+            schedule();
+        }
     }
 
     public void emit(String eventName, double progress) {
-        WritableMap params = Arguments.createMap();
-        params.putDouble("progress", progress);
-        reactContext
-                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName, params);
+        synchronized(lock) {
+            Event event = new Event(eventName, progress);
+            Event previous = this.progress.put(eventName, event);
+
+            if (previous != null) {
+                previous.superseded = true;
+            }
+
+            pending.add(event);
+            schedule();
+        }
     }
 
-    public void emitWithDelay(String eventName, final double progress, int delay) {
-        handler.postDelayed(new Runnable() {
+    public void emitWithDelay(final String eventName, final double progress, int delay) {
+        handler.postAtTime(new Runnable() {
             @Override
             public void run() {
-                emit("keycardInstallationProgress", progress);
+                emit(eventName, progress);
             }
-        }, delay);
+        }, DELAYED, SystemClock.uptimeMillis() + delay);
     }
 
+    /**
+     * Cancels the events scheduled with emitWithDelay which have not been emitted yet.
+     */
     public void removeCallbacksAndMessages() {
-        handler.removeCallbacksAndMessages(null);
+        handler.removeCallbacksAndMessages(DELAYED);
+    }
+
+    /**
+     * Sends what is pending and stops the emission thread.
+     */
+    public void shutdown() {
+        removeCallbacksAndMessages();
+        handler.post(flush);
+        thread.quitSafely();
+    }
+
+    private void schedule() {
+        if (scheduled) {
+            return;
+        }
+
+        scheduled = true;
+        long wait = lastFlush + FRAME_MS - SystemClock.uptimeMillis();
+
+        if (wait > 0) {
+            handler.postDelayed(flush, wait);
+        } else {
+            handler.post(flush);
+        }
+    }
+
+    private void flush() {
+        ArrayList<Event> events;
+
+        synchronized(lock) {
+            events = pending;
+            pending = new ArrayList<>();
+            progress = new HashMap<>();
+            scheduled = false;
+            lastFlush = SystemClock.uptimeMillis();
+        }
+
+        if (events.isEmpty()) {
+            return;
+        }
+
+        DeviceEventManagerModule.RCTDeviceEventEmitter module = module();
+
+        if (module == null) {
+            return;
+        }
+
+        for (Event event : events) {
+            if (event.superseded) {
+                continue;
+            }
+
+            if (event.isProgress) {
+                WritableMap params = Arguments.createMap();
+                params.putDouble("progress", event.progress);
+                module.emit(event.name, params);
+            } else {
+                module.emit(event.name, event.params);
+            }
+        }
+    }
+
+    // The module is looked up once and kept, unless there is no JS instance to deliver to, in which case the events
+    // are dropped as nothing could receive them.
+    private DeviceEventManagerModule.RCTDeviceEventEmitter module() {
+        if (jsModule == null && reactContext.hasActiveCatalystInstance()) {
+            jsModule = reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
+        }
+
+        return jsModule;
     }
 }
@@ -1,29 +1,119 @@
 package im.status.ethereum.keycard;
 
+/**
+ * Lowercase hex codec for everything crossing the bridge. Encoding goes through a per-thread scratch buffer so the
+ * only allocation is the resulting String, and decoding can write into a caller-provided array. Input is validated
+ * with a lookup table; invalid strings are reported once, not per character.
+ */
 public class HexUtils {
-    public static byte[] hexStringToByteArray(String s) {
-        int len = s.length();
-        byte[] data = new byte[len/2];
+    private static final char[] DIGITS = {'0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'};
+    private static final byte[] VALUES = new byte[128];
 
-        for(int i = 0; i < len; i+=2){
-            data[i/2] = (byte) ((Character.digit(s.charAt(i), 16) << 4) + Character.digit(s.charAt(i+1), 16));
+    private static final ThreadLocal<char[]> scratch = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
         }
+    };
 
-        return data;
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = -1;
+        }
+
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+
+        for (int i = 0; i < 6; i++) {
+            VALUES['a' + i] = (byte) (10 + i);
+            VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    public static String toHexString(byte[] bytes) {
+        return toHexString(bytes, 0, bytes.length);
+    }
+
+    public static String toHexString(byte[] bytes, int off, int len) {
+        char[] chars = scratch.get();
+
+        if (chars.length < len * 2) {
+            chars = new char[len * 2];
+            scratch.set(chars);
+        }
+
+        encode(bytes, off, len, chars, 0);
+
+        return new String(chars, 0, len * 2);
+    }
+
+    /**
+     * Encodes len bytes of src into dst starting at dstOff and returns the number of chars written.
+     */
+    public static int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+        for (int i = 0; i < len; i++) {
+            int v = src[off + i] & 0xff;
+            dst[dstOff++] = DIGITS[v >>> 4];
+            dst[dstOff++] = DIGITS[v & 0x0f];
+        }
+
+        return len * 2;
     }
 
-    final protected static char[] hexArray = {'0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'};
+    public static boolean isValid(CharSequence hex) {
+        return isValid(hex, 0, hex.length());
+    }
+
+    public static boolean isValid(CharSequence hex, int start, int end) {
+        if (((end - start) & 1) != 0) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            char c = hex.charAt(i);
+
+            if (c >= 128 || VALUES[c] < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes hex into dst starting at dstOff and returns the number of bytes written, or -1 if hex is not valid
+     * or does not fit. dst is left untouched when -1 is returned.
+     */
+    public static int decode(CharSequence hex, byte[] dst, int dstOff) {
+        return decode(hex, 0, hex.length(), dst, dstOff);
+    }
+
+    /**
+     * Same as above, for the characters of hex between start and end, so that long strings can be decoded a chunk
+     * at a time.
+     */
+    public static int decode(CharSequence hex, int start, int end, byte[] dst, int dstOff) {
+        int len = (end - start) / 2;
+
+        if (!isValid(hex, start, end) || dstOff + len > dst.length) {
+            return -1;
+        }
+
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = (byte) ((VALUES[hex.charAt(start + i * 2)] << 4) | VALUES[hex.charAt(start + i * 2 + 1)]);
+        }
+
+        return len;
+    }
 
-    public static String byteArrayToHexString(byte[] bytes) {
-        char[] hexChars = new char[bytes.length * 2];
-        int v;
+    public static byte[] decode(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
 
-        for(int j=0; j < bytes.length; j++) {
-            v = bytes[j] & 0xFF;
-            hexChars[j * 2] = hexArray[v>>>4];
-            hexChars[j * 2 + 1] = hexArray[v & 0x0F];
+        if (decode(hex, bytes, 0) < 0) {
+            throw new IllegalArgumentException("Invalid hex string");
         }
 
-        return new String(hexChars);
+        return bytes;
     }
 }
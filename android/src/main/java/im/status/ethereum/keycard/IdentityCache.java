@@ -0,0 +1,74 @@
+package im.status.ethereum.keycard;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cards whose identity has been verified against one of the certification authorities, keyed by instance UID and
+ * secure channel public key. Both are read with SELECT, so a known card can be recognized without sending IDENTIFY
+ * CARD and verifying its certificate again. As SELECT can be replayed, an entry is only a hint: callers must have
+ * the card prove that it holds the secure channel key before relying on it. Only successful verifications are
+ * kept, for a limited time.
+ */
+public class IdentityCache {
+    public static final long DEFAULT_TTL_MS = 5 * 60 * 1000;
+
+    private final ConcurrentHashMap<String, Entry> entries;
+    private volatile long ttlNanos;
+
+    public IdentityCache() {
+        this.entries = new ConcurrentHashMap<>();
+        this.ttlNanos = DEFAULT_TTL_MS * 1000000L;
+    }
+
+    private static class Entry {
+        final ByteBuffer caPubKey;
+        final long expiry;
+
+        Entry(ByteBuffer caPubKey, long expiry) {
+            this.caPubKey = caPubKey;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Sets how long a verification stays valid. A TTL of 0 disables the cache.
+     */
+    public void setTTL(long ttlMs) {
+        this.ttlNanos = Math.max(0, ttlMs) * 1000000L;
+        entries.clear();
+    }
+
+    /**
+     * Returns the key of the CA which signed the identity of the card, if it was verified within the TTL.
+     */
+    public ByteBuffer get(String instanceUID, String secureChannelPubKey) {
+        String key = instanceUID + ":" + secureChannelPubKey;
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (System.nanoTime() - entry.expiry > 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+
+        return entry.caPubKey;
+    }
+
+    public void put(String instanceUID, String secureChannelPubKey, ByteBuffer caPubKey) {
+        if (ttlNanos > 0) {
+            entries.put(instanceUID + ":" + secureChannelPubKey, new Entry(caPubKey, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public void invalidate(String instanceUID, String secureChannelPubKey) {
+        entries.remove(instanceUID + ":" + secureChannelPubKey);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+}
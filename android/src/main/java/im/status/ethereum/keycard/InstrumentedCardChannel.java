@@ -0,0 +1,89 @@
+package im.status.ethereum.keycard;
+
+import java.io.IOException;
+
+import im.status.keycard.io.APDUCommand;
+import im.status.keycard.io.APDUResponse;
+import im.status.keycard.io.CardChannel;
+
+/**
+ * A CardChannel recording the latency, size and status word of every exchange in a ChannelMetrics. It also follows
+ * the state of the Keycard secure channel, to tell apart commands which are wrapped (encrypted and MACed) from the
+ * others: the secure channel is open after a successful MUTUALLY AUTHENTICATE and closed by a SELECT or a new OPEN
+ * SECURE CHANNEL. Status words are the ones seen on the channel, for wrapped commands the one returned by the applet
+ * is inside the encrypted response. Each exchange is also traced, with the phase of the operation it belongs to.
+ */
+public class InstrumentedCardChannel implements CardChannel {
+    public static final int INS_SELECT = 0xa4;
+    public static final int INS_OPEN_SECURE_CHANNEL = 0x10;
+    public static final int INS_MUTUALLY_AUTHENTICATE = 0x11;
+    public static final int INS_PAIR = 0x12;
+    public static final int INS_VERIFY_PIN = 0x20;
+    public static final int INS_CHANGE_PIN = 0x21;
+    public static final int INS_UNBLOCK_PIN = 0x22;
+
+    private final CardChannel channel;
+    private final ChannelMetrics metrics;
+    private final Tracer tracer;
+    private volatile boolean secured;
+
+    public InstrumentedCardChannel(CardChannel channel, ChannelMetrics metrics, Tracer tracer) {
+        this.channel = channel;
+        this.metrics = metrics;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public APDUResponse send(APDUCommand cmd) throws IOException {
+        int ins = cmd.getIns() & 0xff;
+        byte[] data = cmd.getData();
+        int bytesSent = 5 + (data == null ? 0 : data.length) + (cmd.getNeedsLE() ? 1 : 0);
+        boolean wrapped = ins == INS_MUTUALLY_AUTHENTICATE || (secured && ins != INS_SELECT && ins != INS_OPEN_SECURE_CHANNEL);
+
+        long start = System.nanoTime();
+        APDUResponse resp;
+
+        try {
+            resp = channel.send(cmd);
+        } catch (IOException e) {
+            metrics.recordError(ins, System.nanoTime() - start, bytesSent);
+            tracer.apdu(phase(ins), ins, -1, 0);
+            throw e;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        int sw = resp.getSw();
+        metrics.record(ins, elapsed, bytesSent, resp.getBytes().length, sw, wrapped);
+        tracer.apdu(phase(ins), ins, sw, elapsed);
+
+        if (ins == INS_SELECT || ins == INS_OPEN_SECURE_CHANNEL) {
+            secured = false;
+        } else if (ins == INS_MUTUALLY_AUTHENTICATE) {
+            secured = sw == 0x9000;
+        }
+
+        return resp;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel.isConnected();
+    }
+
+    private static String phase(int ins) {
+        switch (ins) {
+            case INS_SELECT:
+                return Tracer.PHASE_SELECT;
+            case INS_OPEN_SECURE_CHANNEL:
+            case INS_MUTUALLY_AUTHENTICATE:
+            case INS_PAIR:
+                return Tracer.PHASE_SECURE_CHANNEL;
+            case INS_VERIFY_PIN:
+            case INS_CHANGE_PIN:
+            case INS_UNBLOCK_PIN:
+                return Tracer.PHASE_PIN;
+            default:
+                return Tracer.PHASE_COMMAND;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package im.status.ethereum.keycard;
+
+import org.bouncycastle.crypto.digests.KeccakDigest;
+
+/**
+ * Keccak-256, as used by Ethereum. Hex input is hashed as it is decoded, a chunk at a time through a per-thread
+ * buffer, so hashing a large transaction does not allocate a second copy of its payload.
+ */
+public class Keccak {
+    public static final int DIGEST_LENGTH = 32;
+
+    private static final int CHUNK_LENGTH = 1024;
+
+    private static final ThreadLocal<byte[]> chunk = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_LENGTH];
+        }
+    };
+
+    public static KeccakDigest newDigest() {
+        return new KeccakDigest(256);
+    }
+
+    public static byte[] digest(byte[] data) {
+        return digest(data, 0, data.length);
+    }
+
+    public static byte[] digest(byte[] data, int off, int len) {
+        KeccakDigest keccak = newDigest();
+        keccak.update(data, off, len);
+        return doFinal(keccak);
+    }
+
+    public static byte[] doFinal(KeccakDigest keccak) {
+        byte[] out = new byte[DIGEST_LENGTH];
+        keccak.doFinal(out, 0);
+        return out;
+    }
+
+    /**
+     * The hash of the bytes encoded by hex, which may have a 0x prefix. Throws IllegalArgumentException if hex is
+     * not valid.
+     */
+    public static byte[] digestHex(CharSequence hex) {
+        int start = hex.length() >= 2 && hex.charAt(0) == '0' && (hex.charAt(1) == 'x' || hex.charAt(1) == 'X') ? 2 : 0;
+        int end = hex.length();
+
+        if (((end - start) & 1) != 0) {
+            throw new IllegalArgumentException("Invalid hex string");
+        }
+
+        KeccakDigest keccak = newDigest();
+        byte[] buf = chunk.get();
+
+        while (start < end) {
+            int next = Math.min(end, start + CHUNK_LENGTH * 2);
+            int len = HexUtils.decode(hex, start, next, buf, 0);
+
+            if (len < 0) {
+                throw new IllegalArgumentException("Invalid hex string");
+            }
+
+            keccak.update(buf, 0, len);
+            start = next;
+        }
+
+        return doFinal(keccak);
+    }
+}
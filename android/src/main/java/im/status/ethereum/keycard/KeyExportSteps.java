@@ -0,0 +1,57 @@
+package im.status.ethereum.keycard;
+
+import java.io.IOException;
+
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.io.APDUException;
+
+/**
+ * The EXPORT KEY steps of importKeys and of loading a key: which keys are exported, in which order and with which
+ * P2. Each exported key is recorded in the operation's checkpoint as soon as it is received, so that an operation
+ * resumed after the tag was lost only exports the keys it is still missing.
+ */
+public class KeyExportSteps {
+    public static final String MASTER_PATH = "m";
+    public static final String ROOT_PATH = "m/44'/60'/0'/0";
+    public static final String WALLET_PATH = "m/44'/60'/0'/0/0";
+    public static final String WHISPER_PATH = "m/43'/60'/1581'/0'/0";
+    public static final String ENCRYPTION_PATH = "m/43'/60'/1581'/1'/0";
+
+    public static final String[] IMPORT_PATHS = { ENCRYPTION_PATH, MASTER_PATH, ROOT_PATH, WHISPER_PATH, WALLET_PATH };
+    public static final byte[] IMPORT_P2 = {
+        KeycardCommandSet.EXPORT_KEY_P2_PRIVATE_AND_PUBLIC,
+        KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY,
+        KeycardCommandSet.EXPORT_KEY_P2_EXTENDED_PUBLIC,
+        KeycardCommandSet.EXPORT_KEY_P2_PRIVATE_AND_PUBLIC,
+        KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY
+    };
+
+    public static final String[] LOAD_PATHS = { ROOT_PATH, WHISPER_PATH, ENCRYPTION_PATH, WALLET_PATH };
+    public static final byte[] LOAD_P2 = {
+        KeycardCommandSet.EXPORT_KEY_P2_EXTENDED_PUBLIC,
+        KeycardCommandSet.EXPORT_KEY_P2_PRIVATE_AND_PUBLIC,
+        KeycardCommandSet.EXPORT_KEY_P2_PRIVATE_AND_PUBLIC,
+        KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY
+    };
+
+    private KeyExportSteps() {
+    }
+
+    /**
+     * Exports the keys at the given paths which are not in the checkpoint yet. Cards older than 3.1 cannot export
+     * extended public keys, the plain public key is exported instead.
+     */
+    public static void export(KeycardCommandSet cmdSet, OperationCheckpoint cp, String[] paths, byte[] p2, Tracer tracer) throws IOException, APDUException {
+        boolean extended = cmdSet.getApplicationInfo().getAppVersion() >= 0x0310;
+
+        for (int i = 0; i < paths.length; i++) {
+            if (cp.isDone(paths[i])) {
+                continue;
+            }
+
+            byte stepP2 = (p2[i] == KeycardCommandSet.EXPORT_KEY_P2_EXTENDED_PUBLIC && !extended) ? KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY : p2[i];
+            cp.put(paths[i], cmdSet.exportKey(paths[i], false, stepP2).checkOK().getData());
+            tracer.event("exported", "path", paths[i]);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package im.status.ethereum.keycard;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The completed steps of a multi-step card operation, such as the keys already exported by importKeys, so that the
+ * operation can resume after the tag is lost instead of starting over. A checkpoint belongs to one card and one
+ * key: it only matches the same operation on the card with the same instance UID, holding the key with the given
+ * key UID. Step results may contain private keys, so checkpoints expire and are wiped when dropped.
+ */
+public class OperationCheckpoint {
+    public static final long TTL_MS = 5 * 60 * 1000;
+
+    public final String operation;
+    public final String instanceUID;
+    public final String keyUID;
+
+    private final HashMap<String, byte[]> steps;
+    private final long expiry;
+
+    public OperationCheckpoint(String operation, String instanceUID, String keyUID) {
+        this.operation = operation;
+        this.instanceUID = instanceUID;
+        this.keyUID = keyUID;
+        this.steps = new HashMap<>();
+        this.expiry = System.currentTimeMillis() + TTL_MS;
+    }
+
+    public boolean matches(String operation, String instanceUID, String keyUID) {
+        return this.operation.equals(operation) && this.instanceUID.equals(instanceUID) && this.keyUID.equals(keyUID) && !isExpired();
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() > expiry;
+    }
+
+    public boolean isDone(String step) {
+        return steps.containsKey(step);
+    }
+
+    public byte[] get(String step) {
+        return steps.get(step);
+    }
+
+    public void put(String step, byte[] result) {
+        steps.put(step, result);
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    public void wipe() {
+        for (byte[] result : steps.values()) {
+            if (result != null) {
+                Arrays.fill(result, (byte) 0);
+            }
+        }
+
+        steps.clear();
+    }
+
+    /**
+     * The key UID the card reports once the key with the given master public key is loaded.
+     */
+    public static String keyUID(byte[] publicKey) {
+        try {
+            return HexUtils.toHexString(MessageDigest.getInstance("SHA-256").digest(publicKey));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
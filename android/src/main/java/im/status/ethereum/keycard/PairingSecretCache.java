@@ -0,0 +1,105 @@
+package im.status.ethereum.keycard;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pairing secrets derived from pairing passwords. The derivation is a deliberately slow PBKDF2, so passwords
+ * registered ahead of time are derived on a background thread and pairing only has to look the secret up.
+ */
+public class PairingSecretCache {
+    private static final String SALT = "Keycard Pairing Password Salt";
+    private static final int ITERATIONS = 50000;
+    private static final int SECRET_BITS = 256;
+
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> secrets;
+    private final ExecutorService worker;
+
+    public PairingSecretCache() {
+        this.secrets = new ConcurrentHashMap<>();
+        this.worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "KeycardPairingSecrets");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Starts deriving the secret of the given password in the background, unless it is already known. Once the
+     * cache is shut down nothing is registered any more, and the secret is derived when it is needed.
+     */
+    public void register(String password) {
+        FutureTask<byte[]> task = newTask(password);
+
+        if (secrets.putIfAbsent(password, task) == null) {
+            try {
+                worker.execute(task);
+            } catch (RejectedExecutionException e) {
+                secrets.remove(password, task);
+            }
+        }
+    }
+
+    /**
+     * Returns the secret of the given password. If its derivation is still running this waits for it to complete,
+     * if it was never registered it is derived on the calling thread. Only registered passwords are kept: others
+     * are typically entered once by the user and must not stay in memory. A derivation cancelled by shutdown is
+     * also done on the calling thread.
+     */
+    public byte[] get(String password) {
+        FutureTask<byte[]> task = secrets.get(password);
+
+        if (task == null) {
+            return derive(password);
+        }
+
+        try {
+            return task.get().clone();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return derive(password);
+        } catch (CancellationException e) {
+            secrets.remove(password, task);
+            return derive(password);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Derivations which did not start yet are cancelled, so that get does not wait for them forever.
+    public void shutdown() {
+        for (Runnable task : worker.shutdownNow()) {
+            ((FutureTask<?>) task).cancel(false);
+        }
+    }
+
+    private static FutureTask<byte[]> newTask(final String password) {
+        return new FutureTask<>(new Callable<byte[]>() {
+            public byte[] call() {
+                return derive(password);
+            }
+        });
+    }
+
+    private static byte[] derive(String password) {
+        Charset utf8 = Charset.forName("UTF-8");
+        PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator(new SHA256Digest());
+        generator.init(password.getBytes(utf8), SALT.getBytes(utf8), ITERATIONS);
+
+        return ((KeyParameter) generator.generateDerivedParameters(SECRET_BITS)).getKey();
+    }
+}
@@ -0,0 +1,324 @@
+package im.status.ethereum.keycard;
+
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import im.status.keycard.applet.Pairing;
+
+/**
+ * Pairings by instance UID, persisted to app-private storage. The file is encrypted with an AES-GCM key held in
+ * the Android Keystore and replaced atomically on every change, so a crash during a write leaves the previous
+ * version intact. It is read lazily on first access. Persistence requires Android 6.0; on older versions the store
+ * only lives in memory.
+ *
+ * The store can be used concurrently. Lookups do not lock and return a decoded Pairing, which is only decoded
+ * from its base64 form once. Replacing all pairings swaps in a new map at once, so a concurrent change is either
+ * replaced along with the other pairings or applied to the new ones, never mixed with a partial replacement.
+ */
+public class PairingStore {
+    private static final String TAG = "PairingStore";
+    private static final String FILE_NAME = "keycard-pairings";
+    private static final String KEY_ALIAS = "keycard-pairing-store";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int FORMAT_VERSION = 1;
+    private static final int TAG_LENGTH = 128;
+
+    private volatile ConcurrentHashMap<String, Entry> pairings;
+    private final AtomicFile file;
+    private final ExecutorService writer;
+    private final AtomicBoolean writePending;
+    private volatile boolean loaded;
+    private volatile boolean persistent = true;
+
+    public PairingStore(Context context) {
+        this.pairings = new ConcurrentHashMap<>();
+        this.writePending = new AtomicBoolean();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+            this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "KeycardPairingStore");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            this.file = null;
+            this.writer = null;
+        }
+    }
+
+    public Pairing get(String instanceUID) {
+        load();
+        Entry entry = pairings.get(instanceUID);
+        return entry == null ? null : entry.getPairing();
+    }
+
+    public boolean containsKey(String instanceUID) {
+        load();
+        return pairings.containsKey(instanceUID);
+    }
+
+    public void put(String instanceUID, Pairing pairing) {
+        load();
+        pairings.put(instanceUID, new Entry(pairing.toBase64(), pairing));
+        persist();
+    }
+
+    public void put(String instanceUID, String pairing) {
+        load();
+        pairings.put(instanceUID, new Entry(pairing, null));
+        persist();
+    }
+
+    public void remove(String instanceUID) {
+        load();
+
+        if (pairings.remove(instanceUID) != null) {
+            persist();
+        }
+    }
+
+    public synchronized void setAll(Map<String, String> newPairings) {
+        ConcurrentHashMap<String, Entry> replaced = new ConcurrentHashMap<>();
+
+        for (Map.Entry<String, String> pairing : newPairings.entrySet()) {
+            replaced.put(pairing.getKey(), new Entry(pairing.getValue(), null));
+        }
+
+        pairings = replaced;
+        loaded = true;
+        persist();
+    }
+
+    /**
+     * Stops the writer once the pending write, if any, is done.
+     */
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+
+        synchronized(this) {
+            if (loaded) {
+                return;
+            }
+
+            if (file != null && file.getBaseFile().exists()) {
+                Map<String, String> stored = read();
+
+                if (stored != null) {
+                    for (Map.Entry<String, String> pairing : stored.entrySet()) {
+                        pairings.put(pairing.getKey(), new Entry(pairing.getValue(), null));
+                    }
+                }
+            }
+
+            loaded = true;
+        }
+    }
+
+    // The file is only discarded if its content is corrupt or can no longer be decrypted with the key, which is then
+    // gone for good. A failure to read it or to reach the keystore may be transient, e.g. right after boot: the file
+    // is then kept for the next launch and the store only lives in memory until then, so that it is not overwritten.
+    private Map<String, String> read() {
+        byte[] plain;
+
+        try {
+            plain = decrypt(file.readFully());
+        } catch (AEADBadTagException | InvalidFormatException e) {
+            Log.e(TAG, "discarding unreadable pairing store", e);
+            file.delete();
+            return null;
+        } catch (IOException | GeneralSecurityException e) {
+            Log.e(TAG, "pairing store unavailable, keeping changes in memory", e);
+            persistent = false;
+            return null;
+        }
+
+        try {
+            return decode(plain);
+        } catch (IOException e) {
+            Log.e(TAG, "discarding corrupt pairing store", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static class InvalidFormatException extends IOException {
+        InvalidFormatException(String message) {
+            super(message);
+        }
+    }
+
+    // Writes are coalesced: the content is captured when the write actually runs, so a burst of changes results in
+    // a single write of the latest state.
+    private void persist() {
+        if (file == null || !persistent || !writePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            writer.execute(new Runnable() {
+                public void run() {
+                    writePending.set(false);
+
+                    HashMap<String, String> snapshot = new HashMap<>();
+                    for (Map.Entry<String, Entry> pairing : pairings.entrySet()) {
+                        snapshot.put(pairing.getKey(), pairing.getValue().encoded);
+                    }
+
+                    FileOutputStream out = null;
+
+                    try {
+                        byte[] data = encrypt(encode(snapshot));
+                        out = file.startWrite();
+                        out.write(data);
+                        file.finishWrite(out);
+                    } catch (IOException | GeneralSecurityException e) {
+                        Log.e(TAG, "failed writing pairing store", e);
+
+                        if (out != null) {
+                            file.failWrite(out);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down: the change stays in memory only.
+            writePending.set(false);
+        }
+    }
+
+    private static byte[] encode(Map<String, String> map) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        HashMap<String, String> map = new HashMap<>();
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            map.put(in.readUTF(), in.readUTF());
+        }
+
+        return map;
+    }
+
+    // Layout: version (1 byte), IV length (1 byte), IV, ciphertext with GCM tag.
+    private static byte[] encrypt(byte[] plain) throws GeneralSecurityException, IOException {
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey());
+
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(plain);
+        Arrays.fill(plain, (byte) 0);
+
+        byte[] out = new byte[2 + iv.length + encrypted.length];
+        out[0] = FORMAT_VERSION;
+        out[1] = (byte) iv.length;
+        System.arraycopy(iv, 0, out, 2, iv.length);
+        System.arraycopy(encrypted, 0, out, 2 + iv.length, encrypted.length);
+
+        return out;
+    }
+
+    private static byte[] decrypt(byte[] data) throws GeneralSecurityException, IOException {
+        if (data.length < 2 || data[0] != FORMAT_VERSION || data.length < 2 + (data[1] & 0xff)) {
+            throw new InvalidFormatException("Invalid pairing store format");
+        }
+
+        int ivLength = data[1] & 0xff;
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, secretKey(), new GCMParameterSpec(TAG_LENGTH, data, 2, ivLength));
+
+        return cipher.doFinal(data, 2 + ivLength, data.length - 2 - ivLength);
+    }
+
+    private static SecretKey secretKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+
+        if (keyStore.containsAlias(KEY_ALIAS)) {
+            return (SecretKey) keyStore.getKey(KEY_ALIAS, null);
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+
+        return generator.generateKey();
+    }
+
+    private static class Entry {
+        final String encoded;
+        volatile Pairing decoded;
+
+        Entry(String encoded, Pairing decoded) {
+            this.encoded = encoded;
+            this.decoded = decoded;
+        }
+
+        Pairing getPairing() {
+            Pairing pairing = decoded;
+
+            if (pairing == null) {
+                pairing = new Pairing(encoded);
+                decoded = pairing;
+            }
+
+            return pairing;
+        }
+    }
+}
@@ -17,34 +17,50 @@ import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableArray;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import im.status.keycard.io.APDUException;
 
 public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
+    public static final String NAME = "RNStatusKeycard";
     private static final String TAG = "StatusKeycard";
-    private SmartCard smartCard;
+    private static final String TRACE_FILE = "keycard-trace.log";
+    private final SmartCard smartCard;
     private final ReactApplicationContext reactContext;
+    private final CardExecutor executor;
+    private final ExecutorService hostExecutor;
 
     public RNStatusKeycardModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.executor = new CardExecutor();
+        this.hostExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "KeycardHost");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // The package creates the module lazily, on first use from JS, possibly before the host is resumed: the card
+        // must be usable from the start, and only reader mode waits for onHostResume.
+        this.smartCard = new SmartCard(reactContext, executor);
         reactContext.addLifecycleEventListener(this);
     }
 
     @Override
     public String getName() {
-        return "RNStatusKeycard";
+        return NAME;
     }
 
     @Override
     public void onHostResume() {
-        if (this.smartCard == null) {
-            this.smartCard = new SmartCard(reactContext);
-        }
-
         smartCard.start(getCurrentActivity());
     }
 
@@ -56,6 +72,65 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
     public void onHostDestroy() {
     }
 
+    @Override
+    public void onCatalystInstanceDestroy() {
+        for (Runnable operation : executor.shutdown()) {
+            if (operation instanceof CardOperation) {
+                ((CardOperation) operation).promise.reject("E_KEYCARD_INTERNAL", "Module destroyed");
+            }
+        }
+
+        hostExecutor.shutdown();
+        smartCard.shutdown();
+    }
+
+    // Each card operation runs in a trace span named after the bridge method. Operations only handle the checked
+    // exceptions of the card; anything else rejects the promise here so that it does not stay pending forever.
+    // Arguments rejected on the host, and requests which can no longer be served, such as an expired seed, are
+    // told apart from internal errors.
+    private void enqueue(int priority, String name, Promise promise, Runnable operation) {
+        CardOperation traced = new CardOperation(name, promise, operation);
+
+        if (!executor.submit(priority, traced)) {
+            promise.reject("E_KEYCARD_BUSY", "Card operation queue is full");
+        }
+    }
+
+    // A queued card operation, keeping its promise so that it can still be rejected if the module is destroyed
+    // before the operation runs.
+    private class CardOperation implements Runnable {
+        final String name;
+        final Promise promise;
+        final Runnable operation;
+
+        CardOperation(String name, Promise promise, Runnable operation) {
+            this.name = name;
+            this.promise = promise;
+            this.operation = operation;
+        }
+
+        public void run() {
+            Tracer.Span span = smartCard.getTracer().begin(name);
+
+            try {
+                operation.run();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                rejectInvalid(promise, e);
+            } catch (RuntimeException e) {
+                Log.e(TAG, name + " failed", e);
+                promise.reject("E_KEYCARD_INTERNAL", e);
+            } finally {
+                span.end();
+            }
+        }
+    }
+
+    // Rejects a request found invalid on the host, before or instead of sending anything to the card.
+    private static void rejectInvalid(Promise promise, RuntimeException e) {
+        Log.d(TAG, e.getMessage());
+        promise.reject("E_KEYCARD_INVALID_REQUEST", e.getMessage(), e);
+    }
+
     // Required for rn built in EventEmitter Calls.
     @ReactMethod
     public void addListener(String eventName) {
@@ -69,20 +144,24 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
 
     @ReactMethod
     public void nfcIsSupported(final Promise promise) {
-        if (smartCard != null) {
-            promise.resolve(smartCard.isNfcSupported(getCurrentActivity()));
-        } else {
-            promise.resolve(false);
-        }
+        promise.resolve(smartCard.isNfcSupported(getCurrentActivity()));
     }
 
     @ReactMethod
     public void nfcIsEnabled(final Promise promise) {
-        if (smartCard != null) {
-            promise.resolve(smartCard.isNfcEnabled());
-        } else {
-            promise.resolve(false);
-        }
+        promise.resolve(smartCard.isNfcEnabled());
+    }
+
+    // Synchronous variants of the two methods above, which only query the platform and are cheap enough to run on
+    // the JS thread without a round trip through a Promise.
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean nfcIsSupportedSync() {
+        return smartCard.isNfcSupported(getCurrentActivity());
+    }
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean nfcIsEnabledSync() {
+        return smartCard.isNfcEnabled();
     }
 
     @ReactMethod
@@ -94,7 +173,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
 
     @ReactMethod
     public void init(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "init", promise, new Runnable() {
             public void run() {
                 try {
                     SmartCardSecrets s = smartCard.init(pin);
@@ -110,12 +189,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void pair(final String password, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "pair", promise, new Runnable() {
             public void run() {
                 try {
                     String pairing = smartCard.pair(password);
@@ -127,12 +206,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void generateMnemonic(final String words, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "generateMnemonic", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.generateMnemonic(words));
@@ -141,12 +220,95 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
+    }
+
+    @ReactMethod
+    public void prepareSeed(final String mnemonic, final Promise promise) {
+        hostExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.prepareSeed(mnemonic));
+                } catch (IllegalArgumentException e) {
+                    rejectInvalid(promise, e);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "prepareSeed failed", e);
+                    promise.reject("E_KEYCARD_INTERNAL", e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void releaseSeed(final String handle, final Promise promise) {
+        smartCard.releaseSeed(handle);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void loadKey(final String handle, final String pin, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "loadKey", promise, new Runnable() {
+            public void run() {
+                try {
+                    smartCard.loadKey(handle, pin);
+                    promise.resolve(true);
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void loadPreparedKey(final String handle, final String pin, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "loadPreparedKey", promise, new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.loadPreparedKey(handle, pin));
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void loadWordlist(final String words, final Promise promise) {
+        hostExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    smartCard.loadWordlist(words);
+                    promise.resolve(true);
+                } catch (IllegalArgumentException e) {
+                    rejectInvalid(promise, e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void validateMnemonic(final String mnemonic, final Promise promise) {
+        try {
+            promise.resolve(smartCard.validateMnemonic(mnemonic));
+        } catch (IllegalStateException e) {
+            rejectInvalid(promise, e);
+        }
+    }
+
+    @ReactMethod
+    public void completeWord(final String prefix, final int limit, final Promise promise) {
+        try {
+            promise.resolve(smartCard.completeWord(prefix, limit));
+        } catch (IllegalStateException e) {
+            rejectInvalid(promise, e);
+        }
     }
 
     @ReactMethod
     public void generateAndLoadKey(final String mnemonic, final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "generateAndLoadKey", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.generateAndLoadKey(mnemonic, pin));
@@ -155,12 +317,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void saveMnemonic(final String mnemonic, final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "saveMnemonic", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.saveMnemonic(mnemonic, pin);
@@ -170,12 +332,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void getApplicationInfo(final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "getApplicationInfo", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.getApplicationInfo());
@@ -184,12 +346,26 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
+    }
+
+    @ReactMethod
+    public void refreshApplicationInfo(final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "refreshApplicationInfo", promise, new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.getApplicationInfo(true));
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
     }
 
     @ReactMethod
     public void factoryReset(final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "factoryReset", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.factoryReset());
@@ -198,12 +374,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void deriveKey(final String path, final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "deriveKey", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.deriveKey(path, pin);
@@ -213,12 +389,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void exportKey(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_LOW, "exportKey", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.exportKey(pin));
@@ -227,12 +403,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void exportKeyWithPath(final String pin, final String path, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_LOW, "exportKeyWithPath", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.exportKeyWithPath(pin, path));
@@ -241,12 +417,43 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
+    }
+
+    @ReactMethod
+    public void exportKeysForPaths(final String pin, final ReadableArray paths, final ReadableMap options, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_LOW, "exportKeysForPaths", promise, new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.exportKeysForPaths(pin, paths, options));
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    // Derivation happens on the host only, so it does not wait in the card operation queue.
+    @ReactMethod
+    public void deriveAddresses(final String publicKey, final String chainCode, final int start, final int count, final Promise promise) {
+        hostExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.deriveAddresses(publicKey, chainCode, start, count));
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    rejectInvalid(promise, e);
+                } catch (InterruptedException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
     }
 
     @ReactMethod
     public void getKeys(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_LOW, "getKeys", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.getKeys(pin));
@@ -255,12 +462,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void importKeys(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_LOW, "importKeys", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.importKeys(pin));
@@ -269,12 +476,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void sign(final String pin, final String hash, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "sign", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.sign(pin, hash));
@@ -283,12 +490,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void signWithPath(final String pin, final String path, final String hash, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "signWithPath", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.signWithPath(pin, path, hash));
@@ -297,12 +504,54 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
+    }
+
+    @ReactMethod
+    public void signTransaction(final String pin, final String path, final String transaction, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "signTransaction", promise, new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.signTransaction(pin, path, transaction));
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void signTypedData(final String pin, final String path, final String typedData, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "signTypedData", promise, new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.signTypedData(pin, path, typedData));
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void signBatch(final String pin, final ReadableArray requests, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "signBatch", promise, new Runnable() {
+            public void run() {
+                try {
+                    promise.resolve(smartCard.signBatch(pin, requests));
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
     }
 
     @ReactMethod
     public void signPinless(final String hash, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "signPinless", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.signPinless(hash));
@@ -311,7 +560,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
@@ -326,7 +575,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
 
     @ReactMethod
     public void verifyPin(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "verifyPin", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.verifyPin(pin));
@@ -335,12 +584,33 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
+    }
+
+    @ReactMethod
+    public void beginAuthenticatedSession(final String pin, final int maxOps, final int ttlMs, final Promise promise) {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "beginAuthenticatedSession", promise, new Runnable() {
+            public void run() {
+                try {
+                    smartCard.beginAuthenticatedSession(pin, maxOps, ttlMs);
+                    promise.resolve(true);
+                } catch (IOException | APDUException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
+    @ReactMethod
+    public void endAuthenticatedSession(final Promise promise) {
+        smartCard.endAuthenticatedSession();
+        promise.resolve(true);
     }
 
     @ReactMethod
     public void changePairingPassword(final String pin, final String pairingPassword, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "changePairingPassword", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.changePairingPassword(pin, pairingPassword);
@@ -350,12 +620,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void changePUK(final String pin, final String puk, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "changePUK", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.changePUK(pin, puk);
@@ -365,12 +635,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void changePin(final String currentPin, final String newPin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "changePin", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.changePin(currentPin, newPin);
@@ -380,12 +650,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void unblockPin(final String puk, final String newPin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "unblockPin", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.unblockPin(puk, newPin);
@@ -395,12 +665,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void unpair(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "unpair", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.unpair(pin);
@@ -410,7 +680,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
@@ -420,7 +690,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
 
     @ReactMethod
     public void removeKey(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "removeKey", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.removeKey(pin);
@@ -430,12 +700,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void removeKeyWithUnpair(final String pin, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "removeKeyWithUnpair", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.removeKeyWithUnpair(pin);
@@ -445,12 +715,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void getCardName(final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "getCardName", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.getCardName());
@@ -459,12 +729,12 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
     public void setCardName(final String pin, final String name, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "setCardName", promise, new Runnable() {
             public void run() {
                 try {
                     smartCard.setCardName(pin, name);
@@ -474,7 +744,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
@@ -484,7 +754,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
 
     @ReactMethod
     public void verifyCard(final String challenge, final Promise promise) {
-        new Thread(new Runnable() {
+        enqueue(CardExecutor.PRIORITY_NORMAL, "verifyCard", promise, new Runnable() {
             public void run() {
                 try {
                     promise.resolve(smartCard.verifyCard(challenge));
@@ -493,7 +763,7 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
                     promise.reject(e);
                 }
             }
-        }).start();
+        });
     }
 
     @ReactMethod
@@ -520,12 +790,140 @@ public class RNStatusKeycardModule extends ReactContextBaseJavaModule implements
         promise.resolve(true);
     }
 
+    @ReactMethod
+    public void registerPairingPassword(String password, final Promise promise) {
+        smartCard.registerPairingPassword(password);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void addPairing(String instanceUID, String pairing, final Promise promise) {
+        smartCard.addPairing(instanceUID, pairing);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void removePairing(String instanceUID, final Promise promise) {
+        smartCard.removePairing(instanceUID);
+        promise.resolve(true);
+    }
+
     @ReactMethod
     public void setCertificationAuthorities(ReadableArray caPubKeys, final Promise promise) {
-        smartCard.setCertificationAuthorities(caPubKeys);
+        try {
+            smartCard.setCertificationAuthorities(caPubKeys);
+            promise.resolve(true);
+        } catch (IllegalArgumentException e) {
+            rejectInvalid(promise, e);
+        }
+    }
+
+    @ReactMethod
+    public void setAuthenticityCacheTTL(int ttlMs, final Promise promise) {
+        smartCard.setAuthenticityCacheTTL(ttlMs);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void getQueueStats(final Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("capacity", executor.getCapacity());
+        stats.putInt("queue-depth", executor.getQueueDepth());
+        stats.putInt("max-queue-depth", executor.getMaxQueueDepth());
+        stats.putDouble("submitted", executor.getSubmittedCount());
+        stats.putDouble("completed", executor.getCompletedCount());
+        stats.putDouble("rejected", executor.getRejectedCount());
+        stats.putDouble("average-wait-ms", executor.getAverageWaitMillis());
+        stats.putDouble("max-wait-ms", executor.getMaxWaitMillis());
+
+        promise.resolve(stats);
+    }
+
+    @ReactMethod
+    public void getSessionStats(final Promise promise) {
+        promise.resolve(smartCard.getSessionStats());
+    }
+
+    @ReactMethod
+    public void getMetrics(final Promise promise) {
+        promise.resolve(smartCard.getMetrics());
+    }
+
+    @ReactMethod
+    public void resetMetrics(final Promise promise) {
+        smartCard.resetMetrics();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setResumeTimeout(final int timeoutMs, final Promise promise) {
+        smartCard.setResumeTimeout(timeoutMs);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setWarmUp(final boolean enabled, final Promise promise) {
+        smartCard.setWarmUp(enabled);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void setReaderModeConfig(final ReadableMap options, final Promise promise) {
+        final ReaderModeConfig config = new ReaderModeConfig(
+                options.hasKey("presence-check-delay-ms") ? options.getInt("presence-check-delay-ms") : 0,
+                options.hasKey("transceive-timeout-ms") ? options.getInt("transceive-timeout-ms") : 0,
+                options.hasKey("probe-extended-length") && options.getBoolean("probe-extended-length"),
+                options.hasKey("adaptive") && options.getBoolean("adaptive"));
+
+        final Activity activity = getCurrentActivity();
+
+        if (activity == null) {
+            smartCard.setReaderModeConfig(config, null);
+            promise.resolve(smartCard.getReaderModeConfig());
+            return;
+        }
+
+        // Reader mode is enabled again with the new extras, which must happen on the UI thread.
+        activity.runOnUiThread(new Runnable() {
+            public void run() {
+                smartCard.setReaderModeConfig(config, activity);
+                promise.resolve(smartCard.getReaderModeConfig());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getReaderModeConfig(final Promise promise) {
+        promise.resolve(smartCard.getReaderModeConfig());
+    }
+
+    @ReactMethod
+    public void setTracing(final boolean enabled, final boolean redact, final Promise promise) {
+        smartCard.setTracing(enabled, redact);
         promise.resolve(true);
     }
 
+    @ReactMethod
+    public void getTrace(final Promise promise) {
+        promise.resolve(smartCard.getTrace());
+    }
+
+    @ReactMethod
+    public void flushTrace(final Promise promise) {
+        hostExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    File file = new File(reactContext.getFilesDir(), TRACE_FILE);
+                    smartCard.flushTrace(file);
+                    promise.resolve(file.getAbsolutePath());
+                } catch (IOException e) {
+                    Log.d(TAG, e.getMessage());
+                    promise.reject(e);
+                }
+            }
+        });
+    }
+
     @ReactMethod
     public void setOneTimeVerificationSkip(String instanceUID, final Promise promise) {
         smartCard.setOneTimeVerificationSkip(instanceUID);
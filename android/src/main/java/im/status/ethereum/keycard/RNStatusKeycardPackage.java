@@ -1,20 +1,48 @@
 
 package im.status.ethereum.keycard;
 
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.TurboReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 import com.facebook.react.uimanager.ViewManager;
 import com.facebook.react.bridge.JavaScriptModule;
 
-public class RNStatusKeycardPackage implements ReactPackage {
+// The module is created lazily, when JS first accesses it, rather than when the React instance starts.
+public class RNStatusKeycardPackage extends TurboReactPackage {
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-      return Arrays.<NativeModule>asList(new RNStatusKeycardModule(reactContext));
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+      if (RNStatusKeycardModule.NAME.equals(name)) {
+        return new RNStatusKeycardModule(reactContext);
+      }
+
+      return null;
+    }
+
+    @Override
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+      return new ReactModuleInfoProvider() {
+        @Override
+        public Map<String, ReactModuleInfo> getReactModuleInfos() {
+          Map<String, ReactModuleInfo> infos = new HashMap<>();
+          infos.put(RNStatusKeycardModule.NAME, new ReactModuleInfo(
+              RNStatusKeycardModule.NAME,
+              RNStatusKeycardModule.class.getName(),
+              false, // canOverrideExistingModule
+              false, // needsEagerInit
+              false, // hasConstants
+              false, // isCxxModule
+              false  // isTurboModule
+          ));
+          return infos;
+        }
+      };
     }
 
     // Deprecated from RN 0.47
@@ -26,4 +54,4 @@ public class RNStatusKeycardPackage implements ReactPackage {
     public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
       return Collections.emptyList();
     }
-}
\ No newline at end of file
+}
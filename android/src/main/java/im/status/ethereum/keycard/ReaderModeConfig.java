@@ -0,0 +1,94 @@
+package im.status.ethereum.keycard;
+
+import android.nfc.NfcAdapter;
+import android.os.Bundle;
+
+/**
+ * The NFC reader mode parameters: the delay between the presence checks the platform runs while the tag is idle,
+ * which bounds how fast a removed card is noticed, and the IsoDep transceive timeout, which bounds how long a
+ * command may run. A value of 0 keeps the default (the platform one for the presence check, the one set by
+ * keycard-java for the timeout).
+ *
+ * In adaptive mode both are derived from the APDU latencies observed on this device, once enough commands were
+ * exchanged. The timeout is a multiple of the slowest exchange which got a response, but never below the
+ * keycard-java default, which leaves room for slow commands such as LOAD KEY or GENERATE KEY: it is only raised on
+ * devices slow enough to need it. The presence check is spaced to twice the average exchange, within a narrow range
+ * around the platform default, so that it neither competes with commands on slow devices nor delays noticing that
+ * the card was removed.
+ */
+public class ReaderModeConfig {
+    public static final int MIN_SAMPLES = 32;
+    public static final int LIBRARY_TIMEOUT_MS = 120000;
+    public static final int MAX_TIMEOUT_MS = 300000;
+    public static final int MIN_PRESENCE_CHECK_DELAY_MS = 100;
+    public static final int MAX_PRESENCE_CHECK_DELAY_MS = 250;
+
+    private static final int TIMEOUT_FACTOR = 4;
+    private static final int PRESENCE_CHECK_FACTOR = 2;
+
+    public final int presenceCheckDelayMs;
+    public final int transceiveTimeoutMs;
+    public final boolean probeExtendedLength;
+    public final boolean adaptive;
+
+    public ReaderModeConfig(int presenceCheckDelayMs, int transceiveTimeoutMs, boolean probeExtendedLength, boolean adaptive) {
+        this.presenceCheckDelayMs = presenceCheckDelayMs;
+        this.transceiveTimeoutMs = transceiveTimeoutMs;
+        this.probeExtendedLength = probeExtendedLength;
+        this.adaptive = adaptive;
+    }
+
+    public static ReaderModeConfig defaults() {
+        return new ReaderModeConfig(0, 0, false, false);
+    }
+
+    /**
+     * The configuration to use given the metrics collected so far: this one if not adaptive or with too few
+     * samples, otherwise one with values tuned to the observed latencies.
+     */
+    public ReaderModeConfig effective(ChannelMetrics metrics) {
+        if (!adaptive) {
+            return this;
+        }
+
+        long count = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+
+        for (int ins = 0; ins < 256; ins++) {
+            count += metrics.get(ins, ChannelMetrics.COUNT);
+            totalNanos += metrics.get(ins, ChannelMetrics.TOTAL_NANOS);
+            maxNanos = Math.max(maxNanos, metrics.get(ins, ChannelMetrics.MAX_RESPONSE_NANOS));
+        }
+
+        if (count < MIN_SAMPLES) {
+            return this;
+        }
+
+        long averageMs = totalNanos / count / 1000000;
+        long maxMs = maxNanos / 1000000;
+
+        int timeout = (int) clamp(maxMs * TIMEOUT_FACTOR, LIBRARY_TIMEOUT_MS, MAX_TIMEOUT_MS);
+        int presenceCheckDelay = (int) clamp(averageMs * PRESENCE_CHECK_FACTOR, MIN_PRESENCE_CHECK_DELAY_MS, MAX_PRESENCE_CHECK_DELAY_MS);
+
+        return new ReaderModeConfig(presenceCheckDelay, timeout, probeExtendedLength, true);
+    }
+
+    /**
+     * The extras for NfcAdapter.enableReaderMode, or null to use the platform defaults.
+     */
+    public Bundle toExtras() {
+        if (presenceCheckDelayMs <= 0) {
+            return null;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putInt(NfcAdapter.EXTRA_READER_PRESENCE_CHECK_DELAY, presenceCheckDelayMs);
+
+        return extras;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
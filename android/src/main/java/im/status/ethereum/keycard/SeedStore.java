@@ -0,0 +1,105 @@
+package im.status.ethereum.keycard;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.Mnemonic;
+
+/**
+ * Seeds derived from mnemonics ahead of a tap, referenced by opaque handles. Deriving the seed and the master key
+ * pair takes long enough to matter while the card must be held still, so it is done before, and loading the key
+ * then only needs the commands to the card. Prepared seeds are wiped when released or when they expire.
+ */
+public class SeedStore {
+    public static final long DEFAULT_TTL_MS = 2 * 60 * 1000;
+
+    private final ConcurrentHashMap<String, Seed> seeds;
+    private final ScheduledExecutorService expiry;
+
+    // The expiry scheduler is owned by the caller, which shuts it down.
+    public SeedStore(ScheduledExecutorService expiry) {
+        this.seeds = new ConcurrentHashMap<>();
+        this.expiry = expiry;
+    }
+
+    /**
+     * A prepared seed. Users must hold its lock and check that it was not wiped in the meantime.
+     */
+    public static class Seed {
+        private final byte[] seed;
+        private final BIP32KeyPair keyPair;
+        private boolean wiped;
+
+        Seed(byte[] seed, BIP32KeyPair keyPair) {
+            this.seed = seed;
+            this.keyPair = keyPair;
+        }
+
+        public byte[] getSeed() {
+            return seed;
+        }
+
+        public BIP32KeyPair getKeyPair() {
+            return keyPair;
+        }
+
+        public synchronized boolean isWiped() {
+            return wiped;
+        }
+
+        synchronized void wipe() {
+            wiped = true;
+            Arrays.fill(seed, (byte) 0);
+            Arrays.fill(keyPair.getPrivateKey(), (byte) 0);
+            Arrays.fill(keyPair.getChainCode(), (byte) 0);
+        }
+    }
+
+    /**
+     * Derives the seed and master key pair of the given mnemonic and returns the handle to use them. If the expiry
+     * cannot be scheduled, e.g. because the scheduler was shut down, the seed is wiped and the exception thrown.
+     */
+    public String prepare(String mnemonic, long ttlMs) {
+        byte[] seed = Mnemonic.toBinarySeed(mnemonic, "");
+        final String handle = HexUtils.toHexString(SmartCardSecrets.randomBytes(16));
+        seeds.put(handle, new Seed(seed, BIP32KeyPair.fromBinarySeed(seed)));
+
+        try {
+            expiry.schedule(new Runnable() {
+                public void run() {
+                    release(handle);
+                }
+            }, ttlMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            release(handle);
+            throw e;
+        }
+
+        return handle;
+    }
+
+    /**
+     * Returns the prepared seed, which stays valid until released or expired, or null if there is none.
+     */
+    public Seed get(String handle) {
+        return seeds.get(handle);
+    }
+
+    public void release(String handle) {
+        Seed seed = seeds.remove(handle);
+
+        if (seed != null) {
+            seed.wipe();
+        }
+    }
+
+    public void releaseAll() {
+        for (String handle : seeds.keySet()) {
+            release(handle);
+        }
+    }
+}
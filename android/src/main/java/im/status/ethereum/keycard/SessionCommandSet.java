@@ -0,0 +1,307 @@
+package im.status.ethereum.keycard;
+
+import java.io.IOException;
+
+import im.status.keycard.applet.BIP32KeyPair;
+import im.status.keycard.applet.KeycardCommandSet;
+import im.status.keycard.io.APDUException;
+import im.status.keycard.io.APDUResponse;
+import im.status.keycard.io.CardChannel;
+
+/**
+ * A KeycardCommandSet whose commands survive the loss of a reused secure channel. The card drops the secure channel
+ * on its side when another applet is selected or the card is reset, and then rejects every command sent over it
+ * with a security status word, before executing it. When a command is rejected that way the secure channel is
+ * opened again over this same command set, the PIN is verified again if the operation had verified it, and the
+ * command is sent once more. Callers holding the command set can go on using it as if nothing happened.
+ *
+ * Reopening is left to a Reopener, which knows the pairings and the session the command set belongs to, and which
+ * may refuse to reopen, e.g. if it already did once during the operation. Commands sent while reopening are not
+ * retried.
+ */
+public class SessionCommandSet extends KeycardCommandSet {
+    public interface Reopener {
+        /**
+         * Opens a new secure channel over the given command set, and verifies the PIN of the operation in progress
+         * if there is one. Returns false if the command set is not the one of the current session, in which case
+         * the rejection was not caused by a lost session.
+         */
+        boolean reopen(SessionCommandSet cmdSet) throws IOException, APDUException;
+    }
+
+    private final Reopener reopener;
+
+    // How many overridden commands are in progress. keycard-java implements some commands by calling others, and
+    // only the outermost one retries, so that a lost session is reopened once per command whatever the nesting.
+    // Commands sent by the reopener itself are nested as well and never retried.
+    private int depth;
+
+    public SessionCommandSet(CardChannel channel, Reopener reopener) {
+        super(channel);
+        this.reopener = reopener;
+    }
+
+    // Returns true if the command which got the given status word must be sent again. A failure to reopen leaves
+    // the rejection to the caller.
+    private boolean reopened(int sw) throws IOException {
+        if (sw != APDUResponse.SW_SECURITY_CONDITION_NOT_SATISFIED || depth > 1) {
+            return false;
+        }
+
+        try {
+            return reopener.reopen(this);
+        } catch (APDUException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public APDUResponse getStatus(byte info) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.getStatus(info);
+            return reopened(resp.getSw()) ? super.getStatus(info) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse verifyPIN(String pin) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.verifyPIN(pin);
+            return reopened(resp.getSw()) ? super.verifyPIN(pin) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse changePIN(String pin) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.changePIN(pin);
+            return reopened(resp.getSw()) ? super.changePIN(pin) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse changePUK(String puk) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.changePUK(puk);
+            return reopened(resp.getSw()) ? super.changePUK(puk) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse changePairingPassword(String pairingPassword) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.changePairingPassword(pairingPassword);
+            return reopened(resp.getSw()) ? super.changePairingPassword(pairingPassword) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse unblockPIN(String puk, String newPin) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.unblockPIN(puk, newPin);
+            return reopened(resp.getSw()) ? super.unblockPIN(puk, newPin) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse loadKey(byte[] seed) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.loadKey(seed);
+            return reopened(resp.getSw()) ? super.loadKey(seed) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse loadKey(BIP32KeyPair keyPair) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.loadKey(keyPair);
+            return reopened(resp.getSw()) ? super.loadKey(keyPair) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse removeKey() throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.removeKey();
+            return reopened(resp.getSw()) ? super.removeKey() : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse generateMnemonic(int checksumSize) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.generateMnemonic(checksumSize);
+            return reopened(resp.getSw()) ? super.generateMnemonic(checksumSize) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse sign(byte[] hash) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.sign(hash);
+            return reopened(resp.getSw()) ? super.sign(hash) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse signWithPath(byte[] hash, String path, boolean makeCurrent) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.signWithPath(hash, path, makeCurrent);
+            return reopened(resp.getSw()) ? super.signWithPath(hash, path, makeCurrent) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse deriveKey(String path) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.deriveKey(path);
+            return reopened(resp.getSw()) ? super.deriveKey(path) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse exportCurrentKey(boolean publicOnly) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.exportCurrentKey(publicOnly);
+            return reopened(resp.getSw()) ? super.exportCurrentKey(publicOnly) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse exportKey(String path, boolean makeCurrent, boolean publicOnly) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.exportKey(path, makeCurrent, publicOnly);
+            return reopened(resp.getSw()) ? super.exportKey(path, makeCurrent, publicOnly) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse exportKey(String path, boolean makeCurrent, byte p2) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.exportKey(path, makeCurrent, p2);
+            return reopened(resp.getSw()) ? super.exportKey(path, makeCurrent, p2) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse getData(byte type) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.getData(type);
+            return reopened(resp.getSw()) ? super.getData(type) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public APDUResponse storeData(byte[] data, byte type) throws IOException {
+        depth++;
+
+        try {
+            APDUResponse resp = super.storeData(data, type);
+            return reopened(resp.getSw()) ? super.storeData(data, type) : resp;
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public void autoUnpair() throws IOException, APDUException {
+        depth++;
+
+        try {
+            super.autoUnpair();
+        } catch (APDUException e) {
+            if (!reopened(e.sw)) {
+                throw e;
+            }
+
+            super.autoUnpair();
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public void unpairOthers() throws IOException, APDUException {
+        depth++;
+
+        try {
+            super.unpairOthers();
+        } catch (APDUException e) {
+            if (!reopened(e.sw)) {
+                throw e;
+            }
+
+            super.unpairOthers();
+        } finally {
+            depth--;
+        }
+    }
+}
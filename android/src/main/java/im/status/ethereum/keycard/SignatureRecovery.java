@@ -0,0 +1,205 @@
+package im.status.ethereum.keycard;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import im.status.keycard.applet.RecoverableSignature;
+
+/**
+ * Turns the signature template returned by SIGN into an Ethereum signature (r, s and the recovery id, 65 bytes).
+ *
+ * The template already holds the public key of the signing key, so instead of recovering candidate public keys
+ * until one matches, the point R is computed once from the key, as in ECDSA verification: R = s^-1 (eG + rQ). The
+ * recovery id then follows from R, its lowest bit being the parity of y and the next one whether x overflowed the
+ * curve order. The two multiplications are done together with Shamir's trick, using the wNAF table of the
+ * generator which BouncyCastle precomputes once and keeps with the curve parameters. The last decoded public key is
+ * kept per thread, as batches sign with the same key over and over.
+ *
+ * Templates which cannot be parsed here are handed to keycard-java's RecoverableSignature.
+ */
+public class SignatureRecovery {
+    public static final int SIGNATURE_LENGTH = 65;
+
+    private static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256k1");
+    private static final BigInteger N = CURVE.getN();
+    private static final ECPoint G = CURVE.getG();
+
+    private static final int TLV_SIGNATURE_TEMPLATE = 0xa0;
+    private static final int TLV_PUB_KEY = 0x80;
+    private static final int TLV_ECDSA_TEMPLATE = 0x30;
+    private static final int TLV_INTEGER = 0x02;
+
+    private static class Scratch {
+        byte[] publicKey = new byte[0];
+        ECPoint point;
+
+        // The offset and length of the last element read by readTLV.
+        int valueOffset;
+        int valueLength;
+    }
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * The Ethereum signature, r || s || recovery id, of the given 32 bytes hash from the response data of SIGN.
+     */
+    public static byte[] toEthereumSignature(byte[] hash, byte[] data) {
+        byte[] out = new byte[SIGNATURE_LENGTH];
+
+        if (!recover(hash, data, out)) {
+            RecoverableSignature signature = new RecoverableSignature(hash, data);
+            copyUnsigned(signature.getR(), out, 0);
+            copyUnsigned(signature.getS(), out, 32);
+            out[64] = (byte) signature.getRecId();
+        }
+
+        return out;
+    }
+
+    // Parses the template and writes the signature to out. Returns false if the template has an unexpected layout.
+    private static boolean recover(byte[] hash, byte[] data, byte[] out) {
+        Scratch sc = scratch.get();
+
+        if (!readTLV(sc, data, 0, data.length, TLV_SIGNATURE_TEMPLATE)) {
+            return false;
+        }
+
+        int end = sc.valueOffset + sc.valueLength;
+
+        if (!readTLV(sc, data, sc.valueOffset, end, TLV_PUB_KEY)) {
+            return false;
+        }
+
+        int pubOffset = sc.valueOffset;
+        int pubLength = sc.valueLength;
+
+        if (!readTLV(sc, data, pubOffset + pubLength, end, TLV_ECDSA_TEMPLATE)) {
+            return false;
+        }
+
+        end = sc.valueOffset + sc.valueLength;
+
+        if (!readTLV(sc, data, sc.valueOffset, end, TLV_INTEGER)) {
+            return false;
+        }
+
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(data, sc.valueOffset, sc.valueOffset + sc.valueLength));
+
+        if (!readTLV(sc, data, sc.valueOffset + sc.valueLength, end, TLV_INTEGER)) {
+            return false;
+        }
+
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(data, sc.valueOffset, sc.valueOffset + sc.valueLength));
+
+        if (r.signum() == 0 || s.signum() == 0 || r.compareTo(N) >= 0 || s.compareTo(N) >= 0) {
+            throw new IllegalArgumentException("Invalid signature");
+        }
+
+        ECPoint q = publicKey(sc, data, pubOffset, pubLength);
+        BigInteger w = s.modInverse(N);
+        BigInteger u1 = new BigInteger(1, hash).multiply(w).mod(N);
+        BigInteger u2 = r.multiply(w).mod(N);
+
+        ECPoint point = ECAlgorithms.sumOfTwoMultiplies(G, u1, q, u2).normalize();
+
+        if (point.isInfinity()) {
+            throw new IllegalArgumentException("Invalid signature");
+        }
+
+        BigInteger x = point.getAffineXCoord().toBigInteger();
+
+        if (!x.mod(N).equals(r)) {
+            throw new IllegalArgumentException("Invalid signature");
+        }
+
+        int recId = point.getAffineYCoord().testBitZero() ? 1 : 0;
+
+        if (x.compareTo(N) >= 0) {
+            recId |= 2;
+        }
+
+        copyUnsigned(r.toByteArray(), out, 0);
+        copyUnsigned(s.toByteArray(), out, 32);
+        out[64] = (byte) recId;
+
+        return true;
+    }
+
+    private static ECPoint publicKey(Scratch sc, byte[] data, int off, int len) {
+        if (sc.point == null || sc.publicKey.length != len || !regionEquals(sc.publicKey, data, off)) {
+            sc.point = CURVE.getCurve().decodePoint(Arrays.copyOfRange(data, off, off + len));
+            sc.publicKey = Arrays.copyOfRange(data, off, off + len);
+        }
+
+        return sc.point;
+    }
+
+    // Reads the header of the element at off, which must have the given tag and fit before end, and stores the
+    // position of its value in the scratch. Lengths are BER encoded, in at most two bytes.
+    private static boolean readTLV(Scratch sc, byte[] data, int off, int end, int tag) {
+        if (off + 2 > end || (data[off] & 0xff) != tag) {
+            return false;
+        }
+
+        int len = data[off + 1] & 0xff;
+        off += 2;
+
+        if (len == 0x81) {
+            if (off + 1 > end) {
+                return false;
+            }
+
+            len = data[off++] & 0xff;
+        } else if (len == 0x82) {
+            if (off + 2 > end) {
+                return false;
+            }
+
+            len = ((data[off] & 0xff) << 8) | (data[off + 1] & 0xff);
+            off += 2;
+        } else if (len > 0x7f) {
+            return false;
+        }
+
+        if (off + len > end) {
+            return false;
+        }
+
+        sc.valueOffset = off;
+        sc.valueLength = len;
+
+        return true;
+    }
+
+    private static boolean regionEquals(byte[] a, byte[] data, int off) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != data[off + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Writes an unsigned big-endian integer as 32 bytes, dropping the sign byte or left padding with zeroes.
+    private static void copyUnsigned(byte[] value, byte[] out, int off) {
+        int start = 0;
+
+        while (value.length - start > 32 && value[start] == 0) {
+            start++;
+        }
+
+        int len = value.length - start;
+        System.arraycopy(value, start, out, off + 32 - len, len);
+    }
+}
@@ -8,30 +8,37 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.nfc.NfcAdapter;
+import android.os.Build;
 import android.util.EventLog;
 import android.util.Log;
 
 import com.facebook.react.bridge.*;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import im.status.keycard.applet.RecoverableSignature;
 import im.status.keycard.applet.Certificate;
 import im.status.keycard.globalplatform.GlobalPlatformCommandSet;
 import im.status.keycard.io.APDUException;
 import im.status.keycard.io.APDUResponse;
 import im.status.keycard.io.CardChannel;
 import im.status.keycard.io.CardListener;
-import im.status.keycard.android.NFCCardManager;
 import im.status.keycard.applet.ApplicationStatus;
 import im.status.keycard.applet.BIP32KeyPair;
 import im.status.keycard.applet.Mnemonic;
@@ -42,35 +49,91 @@ import im.status.keycard.applet.Pairing;
 import im.status.keycard.applet.ApplicationInfo;
 import im.status.keycard.applet.KeyPath;
 
-import org.bouncycastle.util.encoders.Hex;
-
 public class SmartCard extends BroadcastReceiver implements CardListener {
-    private NFCCardManager cardManager;
+    private TunedCardManager cardManager;
     private NfcAdapter nfcAdapter;
     private CardChannel cardChannel;
     private EventEmitter eventEmitter;
     private static final String TAG = "SmartCard";
     private boolean started = false;
     private volatile boolean listening = false;
-    private HashMap<String, String> pairings;
-    private String[] caPubKeys;
+    private PairingStore pairings;
+    private PairingSecretCache pairingSecrets;
+    private CardInfoCache cardInfoCache;
+    private IdentityCache identityCache;
+
+    // The outcome of the last verifyAuthenticity, until confirmIdentity. Only accessed on the card thread.
+    private ByteBuffer identifiedCA;
+    private boolean identityFromCache;
+    private volatile Wordlist wordlist;
+    private SeedStore seeds;
+    private ChannelMetrics metrics;
+    private Tracer tracer;
+    private volatile Set<ByteBuffer> caPubKeys;
     private String skipVerificationUID;
+    private CardSession session;
+    // Whether the operation in progress already verified the PIN again after reopening the secure channel. Guarded
+    // by the lock.
+    private boolean pinReverified;
+    private AddressDeriver addressDeriver;
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong handshakesSaved = new AtomicLong();
     private final Object lock = new Object();
+    private long connections = 0;
+    private volatile int resumeTimeoutMs = 0;
+    private final CardExecutor cardExecutor;
+    private final ScheduledExecutorService expiry;
+    private volatile ReaderModeConfig readerModeConfig = ReaderModeConfig.defaults();
+
+    // Set when warm-up is enabled. The applet info read by the last warm-up and the channel it was read on are
+    // guarded by the lock.
+    private volatile boolean warmUp;
+    private ApplicationInfo warmInfo;
+    private boolean warmPaired;
+    private CardChannel warmChannel;
+
+    // The current key path to restore on the card with the given instance UID, when exportKeys could not restore
+    // it. Only accessed on the card thread.
+    private String pendingKeyPath;
+    private String pendingKeyPathUID;
+
+    // The checkpoint of the last interrupted multi-step operation. Only accessed on the card thread: it is wiped
+    // through the card executor when it expires or is dropped.
+    private OperationCheckpoint checkpoint;
+
+    // Hashes to sign are decoded into this buffer. Card operations run one at a time on the card thread and a hash
+    // is no longer needed once its signature has been serialized.
+    private final byte[] hashBuffer = new byte[32];
 
-    private static final String MASTER_PATH = "m";
-    private static final String ROOT_PATH = "m/44'/60'/0'/0";
-    private static final String WALLET_PATH = "m/44'/60'/0'/0/0";
-    private static final String WHISPER_PATH = "m/43'/60'/1581'/0'/0";
-    private static final String ENCRYPTION_PATH = "m/43'/60'/1581'/1'/0";
     private static final String TAG_LOST = "Tag was lost.";
-    private static final int WORDS_LIST_SIZE = 2048;
-
-    public SmartCard(ReactContext reactContext) {
-        this.cardManager = new NFCCardManager();
+    private static final String DEFAULT_PAIRING_PASSWORD = "KeycardDefaultPairing";
+    private static final String STEP_LOAD_KEY = "load-key";
+
+    // Waiting for the card to come back holds the card thread, so the wait is bounded.
+    public static final int MAX_RESUME_TIMEOUT_MS = 30000;
+
+    public SmartCard(ReactContext reactContext, CardExecutor cardExecutor) {
+        this.cardExecutor = cardExecutor;
+        this.expiry = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "KeycardExpiry");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.cardManager = new TunedCardManager();
         this.cardManager.setCardListener(this);
+        this.nfcAdapter = NfcAdapter.getDefaultAdapter(reactContext.getApplicationContext());
         this.eventEmitter = new EventEmitter(reactContext);
-        this.pairings = new HashMap<>();
-        this.caPubKeys = new String[0];
+        this.pairings = new PairingStore(reactContext.getApplicationContext());
+        this.pairingSecrets = new PairingSecretCache();
+        this.pairingSecrets.register(DEFAULT_PAIRING_PASSWORD);
+        this.cardInfoCache = new CardInfoCache();
+        this.identityCache = new IdentityCache();
+        this.seeds = new SeedStore(expiry);
+        this.metrics = new ChannelMetrics();
+        this.tracer = new Tracer();
+        this.caPubKeys = new HashSet<>();
         this.skipVerificationUID = "";
     }
 
@@ -88,7 +151,6 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         }
 
         if (!started) {
-            this.nfcAdapter = NfcAdapter.getDefaultAdapter(activity.getBaseContext());
             this.cardManager.start();
             started = true;
         }
@@ -96,7 +158,7 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         if (this.nfcAdapter != null) {
             IntentFilter filter = new IntentFilter(NfcAdapter.ACTION_ADAPTER_STATE_CHANGED);
             activity.registerReceiver(this, filter);
-            nfcAdapter.enableReaderMode(activity, this.cardManager, NfcAdapter.FLAG_READER_NFC_A | NfcAdapter.FLAG_READER_SKIP_NDEF_CHECK, null);
+            enableReaderMode(activity);
             return true;
         } else {
             log("not support in this device");
@@ -104,6 +166,49 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         }
     }
 
+    private void enableReaderMode(Activity activity) {
+        ReaderModeConfig config = readerModeConfig.effective(metrics);
+        cardManager.configure(config);
+        nfcAdapter.enableReaderMode(activity, this.cardManager, NfcAdapter.FLAG_READER_NFC_A | NfcAdapter.FLAG_READER_SKIP_NDEF_CHECK, config.toExtras());
+    }
+
+    // The presence check delay is only applied when reader mode is enabled, so it is enabled again if it is on.
+    public void setReaderModeConfig(ReaderModeConfig config, Activity activity) {
+        this.readerModeConfig = config;
+        cardManager.configure(config.effective(metrics));
+
+        if (started && activity != null && nfcAdapter != null) {
+            enableReaderMode(activity);
+        }
+    }
+
+    public WritableMap getReaderModeConfig() {
+        ReaderModeConfig config = readerModeConfig;
+        ReaderModeConfig effective = config.effective(metrics);
+
+        WritableMap out = Arguments.createMap();
+        out.putInt("presence-check-delay-ms", config.presenceCheckDelayMs);
+        out.putInt("transceive-timeout-ms", config.transceiveTimeoutMs);
+        out.putBoolean("probe-extended-length", config.probeExtendedLength);
+        out.putBoolean("adaptive", config.adaptive);
+        out.putInt("effective-presence-check-delay-ms", effective.presenceCheckDelayMs);
+        out.putInt("effective-transceive-timeout-ms", effective.transceiveTimeoutMs);
+        out.putInt("applied-transceive-timeout-ms", cardManager.getAppliedTimeout());
+
+        Boolean extendedLength = cardManager.isExtendedLengthSupported();
+
+        if (extendedLength == null) {
+            out.putNull("extended-length");
+        } else {
+            out.putBoolean("extended-length", extendedLength);
+            out.putInt("max-transceive-length", cardManager.getMaxTransceiveLength());
+        }
+
+        out.putString("device", Build.MANUFACTURER + " " + Build.MODEL);
+
+        return out;
+    }
+
     public void stop(Activity activity) {
         if (activity != null && nfcAdapter != null) {
             nfcAdapter.disableReaderMode(activity);
@@ -114,7 +219,7 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         synchronized(lock) {
             this.listening = true;
             if (this.cardChannel != null) {
-                eventEmitter.emit("keyCardOnConnected", null);
+                eventEmitter.emit("keyCardOnConnected", connectedEvent());
             }
         }
     }
@@ -125,22 +230,132 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         }
     }
 
+    /**
+     * Enables or disables the warm-up run on the card executor each time a card connects. When enabled the
+     * connected event is delayed until the warm-up is done and carries what it found.
+     */
+    public void setWarmUp(boolean enabled) {
+        this.warmUp = enabled;
+    }
+
     @Override
     public void onConnected(final CardChannel channel) {
+        final CardChannel instrumented = new InstrumentedCardChannel(channel, metrics, tracer);
+        boolean warmUp = this.warmUp;
+
         synchronized(lock) {
-            this.cardChannel = channel;
+            this.cardChannel = instrumented;
+            closeSession();
+            this.warmInfo = null;
+            this.warmChannel = null;
+            this.connections++;
+            lock.notifyAll();
+
+            if (!warmUp) {
+                if (this.listening) {
+                    eventEmitter.emit("keyCardOnConnected", null);
+                }
+
+                return;
+            }
+        }
+
+        boolean queued = cardExecutor.submit(CardExecutor.PRIORITY_HIGH, new Runnable() {
+            public void run() {
+                Tracer.Span span = tracer.begin("warmUp");
+
+                try {
+                    warmUp(instrumented);
+                } finally {
+                    span.end();
+                }
+            }
+        });
+
+        if (!queued) {
+            synchronized(lock) {
+                if (this.listening) {
+                    eventEmitter.emit("keyCardOnConnected", null);
+                }
+            }
+        }
+    }
+
+    // Selects the applet and, if the card is paired, opens the secure channel while the card is still being brought
+    // into position, so that the first operation finds a session ready. A failure only means the operation will do
+    // these steps itself. The connected event is sent in any case, unless another card was tapped in the meantime.
+    private void warmUp(CardChannel channel) {
+        ApplicationInfo info = null;
+        boolean paired = false;
+
+        try {
+            KeycardCommandSet cmdSet;
+
+            synchronized(lock) {
+                if (this.cardChannel != channel) {
+                    return;
+                }
+
+                closeSession();
+                cmdSet = new SessionCommandSet(channel, reopener);
+            }
+
+            info = new ApplicationInfo(cmdSet.select().checkOK().getData());
+            traceApplicationInfo(info);
+
+            if (info.isInitializedCard() && pairings.containsKey(HexUtils.toHexString(info.getInstanceUID()))) {
+                openSecureChannel(cmdSet);
+                paired = true;
+            }
+        } catch (IOException | APDUException e) {
+            tracer.event("warm-up failed");
+        }
+
+        synchronized(lock) {
+            if (this.cardChannel != channel) {
+                return;
+            }
+
+            this.warmInfo = info;
+            this.warmPaired = paired;
+            this.warmChannel = channel;
 
             if (this.listening) {
-                eventEmitter.emit("keyCardOnConnected", null);
+                eventEmitter.emit("keyCardOnConnected", connectedEvent());
             }
         }
     }
 
+    // The parameters of the connected event: what the warm-up found on the card in the field, if anything. Must be
+    // called holding the lock.
+    private WritableMap connectedEvent() {
+        if (this.warmInfo == null || this.warmChannel != this.cardChannel) {
+            return null;
+        }
+
+        WritableMap event = Arguments.createMap();
+        event.putBoolean("initialized?", warmInfo.isInitializedCard());
+
+        if (warmInfo.isInitializedCard()) {
+            event.putString("instance-uid", HexUtils.toHexString(warmInfo.getInstanceUID()));
+            event.putString("key-uid", HexUtils.toHexString(warmInfo.getKeyUID()));
+            event.putString("app-version", warmInfo.getAppVersionString());
+            event.putBoolean("paired?", warmPaired);
+        }
+
+        return event;
+    }
+
     @Override
     public void onDisconnected() {
+        cardManager.configure(readerModeConfig.effective(metrics));
+
         synchronized(lock) {
             this.cardChannel = null;
-            
+            closeSession();
+            this.warmInfo = null;
+            this.warmChannel = null;
+
             if (this.listening) {
                 eventEmitter.emit("keyCardOnDisconnected", null);
             }
@@ -165,8 +380,13 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         }
     }
 
+    // Without an activity, e.g. before the host is resumed, the adapter tells whether the device has NFC.
     public boolean isNfcSupported(Activity activity) {
-        return activity != null && activity.getPackageManager().hasSystemFeature(PackageManager.FEATURE_NFC);
+        if (activity == null) {
+            return nfcAdapter != null;
+        }
+
+        return activity.getPackageManager().hasSystemFeature(PackageManager.FEATURE_NFC);
     }
 
     public boolean isNfcEnabled() {
@@ -183,63 +403,152 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         SmartCardSecrets s = SmartCardSecrets.generate(userPin);
         cmdSet.init(s.getPin(), s.getPuk(), s.getPairingPassword()).checkOK();
+        cardInfoCache.invalidateAll();
         return s;
     }
 
     public String pair(String pairingPassword) throws IOException, APDUException {
         KeycardCommandSet cmdSet = commandSet();
-        Log.i(TAG, "Applet selection successful");
 
         // First thing to do is selecting the applet on the card.
         ApplicationInfo info = new ApplicationInfo(cmdSet.select().checkOK().getData());
-        String instanceUID = Hex.toHexString(info.getInstanceUID());
-        Log.i(TAG, "Instance UID: " + instanceUID);
-        Log.i(TAG, "Key UID: " + Hex.toHexString(info.getKeyUID()));
-        Log.i(TAG, "Secure channel public key: " + Hex.toHexString(info.getSecureChannelPubKey()));
-        Log.i(TAG, "Application version: " + info.getAppVersionString());
-        Log.i(TAG, "Free pairing slots: " + info.getFreePairingSlots());
+        String instanceUID = HexUtils.toHexString(info.getInstanceUID());
+        traceApplicationInfo(info);
 
-        cmdSet.autoPair(pairingPassword);
+        cmdSet.autoPair(pairingSecrets.get(pairingPassword));
 
         Pairing pairing = cmdSet.getPairing();
-        pairings.put(instanceUID, pairing.toBase64());
+        pairings.put(instanceUID, pairing);
+        cardInfoCache.invalidate(instanceUID);
         return pairing.toBase64();
     }
 
     public String generateMnemonic(String words) throws IOException, APDUException {
         KeycardCommandSet cmdSet = securedCommandSet();
+        APDUResponse resp = cmdSet.generateMnemonic(KeycardCommandSet.GENERATE_MNEMONIC_12_WORDS);
+        Mnemonic mnemonic = new Mnemonic(resp.checkOK().getData());
+        mnemonic.setWordlist(wordlist(words).getWords());
+
+        return mnemonic.toMnemonicPhrase();
+    }
+
+    public void loadWordlist(String words) {
+        wordlist(words);
+    }
 
-        Mnemonic mnemonic = new Mnemonic(cmdSet.generateMnemonic(KeycardCommandSet.GENERATE_MNEMONIC_12_WORDS).checkOK().getData());
+    public boolean validateMnemonic(String mnemonic) {
+        return wordlist("").isValidMnemonic(mnemonic);
+    }
 
-        Scanner scanner = new Scanner(words);
-        ArrayList<String> list = new ArrayList<>();
-        while(scanner.hasNextLine()) {
-            list.add(scanner.nextLine());
+    public WritableArray completeWord(String prefix, int limit) {
+        WritableArray words = Arguments.createArray();
+
+        for (String word : wordlist("").complete(prefix, limit)) {
+            words.pushString(word);
         }
-        scanner.close();
 
-        String [] wordsList = list.toArray(new String[WORDS_LIST_SIZE]);
-        mnemonic.setWordlist(wordsList);
+        return words;
+    }
+
+    // An empty list means the one loaded with loadWordlist. A list passed explicitly replaces it, and is only parsed
+    // and indexed again if it differs from the loaded one.
+    private Wordlist wordlist(String words) {
+        Wordlist current = this.wordlist;
 
-        return mnemonic.toMnemonicPhrase();
+        if (!words.isEmpty()) {
+            if (current != null && current.isParsedFrom(words)) {
+                return current;
+            }
+
+            current = Wordlist.parse(words);
+            this.wordlist = current;
+        } else if (current == null) {
+            throw new IllegalStateException("No wordlist loaded");
+        }
+
+        return current;
     }
 
     public void saveMnemonic(String mnemonic, String pin) throws IOException, APDUException {
         KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
 
         byte[] seed = Mnemonic.toBinarySeed(mnemonic, "");
-        cmdSet.loadKey(seed);
+        loadSeed(cmdSet, seed);
+    }
+
+    public String prepareSeed(String mnemonic) {
+        return seeds.prepare(mnemonic, SeedStore.DEFAULT_TTL_MS);
+    }
+
+    public void releaseSeed(String handle) {
+        seeds.release(handle);
+    }
+
+    public void releaseAllSeeds() {
+        seeds.releaseAll();
+    }
+
+    // Stops all the threads owned by this instance, so that nothing is left behind when React is reloaded.
+    public void shutdown() {
+        releaseAllSeeds();
+        clearCheckpoint();
+        expiry.shutdownNow();
+        pairings.shutdown();
+        pairingSecrets.shutdown();
+
+        synchronized(lock) {
+            if (this.addressDeriver != null) {
+                this.addressDeriver.shutdown();
+                this.addressDeriver = null;
+            }
+        }
+
+        eventEmitter.shutdown();
+    }
+
+    // Same as saveMnemonic, with a seed prepared by prepareSeed. The handle is only released once the seed is on the
+    // card, so the operation can be retried if the card is lost in between.
+    public void loadKey(String handle, String pin) throws IOException, APDUException {
+        SeedStore.Seed seed = preparedSeed(handle);
+
+        synchronized(seed) {
+            if (seed.isWiped()) {
+                throw new IllegalStateException("Seed expired");
+            }
+
+            KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
+            loadSeed(cmdSet, seed.getSeed()).checkOK();
+        }
+
+        seeds.release(handle);
+    }
+
+    private SeedStore.Seed preparedSeed(String handle) {
+        SeedStore.Seed seed = seeds.get(handle);
+
+        if (seed == null) {
+            throw new IllegalStateException("Seed expired");
+        }
+
+        return seed;
+    }
+
+    private APDUResponse loadSeed(KeycardCommandSet cmdSet, byte[] seed) throws IOException {
+        APDUResponse resp = cmdSet.loadKey(seed);
+        invalidateCardInfo(cmdSet);
+        endSession();
 
         log("seed loaded to card");
+        return resp;
     }
 
     public boolean tryDefaultPairing(KeycardCommandSet cmdSet, String instanceUID, WritableMap cardInfo) throws IOException {
         try {
-            cmdSet.autoPair("KeycardDefaultPairing");
+            cmdSet.autoPair(pairingSecrets.get(DEFAULT_PAIRING_PASSWORD));
 
             Pairing pairing = cmdSet.getPairing();
             String base64Pairing = pairing.toBase64();
-            pairings.put(instanceUID, base64Pairing);
+            pairings.put(instanceUID, pairing);
             cardInfo.putString("new-pairing", base64Pairing);
             WritableMap eventBody = Arguments.createMap();
             eventBody.putString("pairing", base64Pairing);
@@ -254,12 +563,28 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         }
     }
 
-    private boolean verifyAuthenticity(KeycardCommandSet cmdSet, String instanceUID) throws IOException {
-        if ((this.caPubKeys.length == 0) || instanceUID.equals(this.skipVerificationUID)) {
+    // The instance UID and secure channel public key come from SELECT, which anyone can replay, so a verification
+    // found in the cache is only trusted if the card then proves that it holds the secure channel key by opening a
+    // secure channel, see confirmIdentity. Likewise, a verification is only cached once the card has done so.
+    private boolean verifyAuthenticity(KeycardCommandSet cmdSet, String instanceUID, boolean useCache) throws IOException {
+        Set<ByteBuffer> cas = this.caPubKeys;
+        this.identifiedCA = null;
+        this.identityFromCache = false;
+
+        if (cas.isEmpty() || instanceUID.equals(this.skipVerificationUID)) {
             this.skipVerificationUID = "";
             return true;
         }
 
+        String secureChannelPubKey = HexUtils.toHexString(cmdSet.getApplicationInfo().getSecureChannelPubKey());
+        ByteBuffer verifiedCA = useCache ? identityCache.get(instanceUID, secureChannelPubKey) : null;
+
+        if (verifiedCA != null && cas.contains(verifiedCA)) {
+            tracer.event("card identity already verified");
+            this.identityFromCache = true;
+            return true;
+        }
+
         try {
             byte[] rawChallenge = SmartCardSecrets.randomBytes(32);
             byte[] data = cmdSet.identifyCard(rawChallenge).checkOK().getData();
@@ -269,47 +594,102 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
                 return false;
             }
 
-            String caStr = Hex.toHexString(caPubKey);
-            for (int i = 0; i < this.caPubKeys.length; i++) {
-                if (caStr.equals(this.caPubKeys[i])) {
-                    return true;
-                }
+            ByteBuffer ca = ByteBuffer.wrap(caPubKey);
+
+            if (cas.contains(ca)) {
+                this.identifiedCA = ca;
+                return true;
             }
         } catch(APDUException e) {
-            Log.i(TAG, "verification failed: " + e.getMessage());
+            tracer.event("verification failed", "error", e.getMessage());
         }
 
         return false;
     }
 
+    // Called once pairing with the default password was attempted on a card found authentic. A secure channel was
+    // opened if paired: a fresh verification can then be cached, while a cached one is confirmed. Otherwise a cached
+    // verification is dropped and the card is verified again with IDENTIFY CARD.
+    private boolean confirmIdentity(KeycardCommandSet cmdSet, String instanceUID, boolean paired) throws IOException {
+        String secureChannelPubKey = HexUtils.toHexString(cmdSet.getApplicationInfo().getSecureChannelPubKey());
+
+        if (paired) {
+            if (this.identifiedCA != null) {
+                identityCache.put(instanceUID, secureChannelPubKey, this.identifiedCA);
+            }
+
+            return true;
+        }
+
+        if (!this.identityFromCache) {
+            return true;
+        }
+
+        identityCache.invalidate(instanceUID, secureChannelPubKey);
+        return verifyAuthenticity(cmdSet, instanceUID, false);
+    }
+
     public WritableMap getApplicationInfo() throws IOException, APDUException {
-        KeycardCommandSet cmdSet = commandSet();
-        ApplicationInfo info = new ApplicationInfo(cmdSet.select().checkOK().getData());
+        return getApplicationInfo(false);
+    }
+
+    // Unless a fresh read is requested, the card is identified either from the current secure channel session, with
+    // no command at all, or with a single SELECT. The rest of the information comes from the cache if it holds an
+    // entry for the card and its current key.
+    public WritableMap getApplicationInfo(boolean fresh) throws IOException, APDUException {
+        KeycardCommandSet cmdSet = null;
+        ApplicationInfo info = null;
+
+        if (!fresh) {
+            synchronized(lock) {
+                if (this.session != null && this.session.isBoundTo(this.cardChannel)) {
+                    info = this.session.getCommandSet().getApplicationInfo();
+                }
+            }
+
+            if (info == null) {
+                cmdSet = commandSet();
+                info = new ApplicationInfo(cmdSet.select().checkOK().getData());
+            }
+
+            if (info.isInitializedCard()) {
+                String instanceUID = HexUtils.toHexString(info.getInstanceUID());
+                CardInfoCache.Entry cached = cardInfoCache.get(instanceUID, HexUtils.toHexString(info.getKeyUID()));
+
+                if (cached != null && (!cached.paired || pairings.containsKey(instanceUID))) {
+                    tracer.event("application info cached");
+                    WritableMap cardInfo = Arguments.createMap();
+                    putCardInfo(cardInfo, info, cached);
+                    return cardInfo;
+                }
+            }
+        }
 
-        Log.i(TAG, "Card initialized? " + info.isInitializedCard());
+        if (cmdSet == null) {
+            cmdSet = commandSet();
+            info = new ApplicationInfo(cmdSet.select().checkOK().getData());
+        }
+
+        tracer.event("application info", "initialized", info.isInitializedCard() ? 1 : 0);
 
         WritableMap cardInfo = Arguments.createMap();
         cardInfo.putBoolean("initialized?", info.isInitializedCard());
 
         if (info.isInitializedCard()) {
-            String instanceUID = Hex.toHexString(info.getInstanceUID());
+            String instanceUID = HexUtils.toHexString(info.getInstanceUID());
             String cardName = getCardNameOrDefault(cmdSet);
-            cardInfo.putString("card-name", cardName);
 
-            Log.i(TAG, "Instance UID: " + instanceUID);
-            Log.i(TAG, "Card name: " + cardName);
-            Log.i(TAG, "Key UID: " + Hex.toHexString(info.getKeyUID()));
-            Log.i(TAG, "Secure channel public key: " + Hex.toHexString(info.getSecureChannelPubKey()));
-            Log.i(TAG, "Application version: " + info.getAppVersionString());
-            Log.i(TAG, "Free pairing slots: " + info.getFreePairingSlots());
+            traceApplicationInfo(info);
+            tracer.sensitive("application info", "card-name", cardName);
 
             Boolean isPaired = false;
             Boolean isAuthentic = false;
 
             if (!pairings.containsKey(instanceUID)) {
-                isAuthentic = verifyAuthenticity(cmdSet, instanceUID);
+                isAuthentic = verifyAuthenticity(cmdSet, instanceUID, true);
                 if (isAuthentic) {
                     isPaired = tryDefaultPairing(cmdSet, instanceUID, cardInfo);
+                    isAuthentic = confirmIdentity(cmdSet, instanceUID, isPaired);
                 }
             } else {
                 try {
@@ -317,37 +697,54 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
                     isPaired = true;
                     isAuthentic = true;
                 } catch(APDUException e) {
-                    isAuthentic = verifyAuthenticity(cmdSet, instanceUID);
+                    isAuthentic = verifyAuthenticity(cmdSet, instanceUID, true);
                     if (isAuthentic) {
                         isPaired = tryDefaultPairing(cmdSet, instanceUID, cardInfo);
+                        isAuthentic = confirmIdentity(cmdSet, instanceUID, isPaired);
                     }
                 }
             }
 
-            cardInfo.putBoolean("authentic?", isAuthentic);
+            int pinRetryCount = -1;
+            int pukRetryCount = -1;
 
             if (isPaired) {
                 ApplicationStatus status = new ApplicationStatus(cmdSet.getStatus(KeycardCommandSet.GET_STATUS_P1_APPLICATION).checkOK().getData());
 
-                Log.i(TAG, "PIN retry counter: " + status.getPINRetryCount());
-                Log.i(TAG, "PUK retry counter: " + status.getPUKRetryCount());
+                tracer.event("application status", "pin-retry-counter", status.getPINRetryCount());
+                tracer.event("application status", "puk-retry-counter", status.getPUKRetryCount());
 
-                cardInfo.putInt("pin-retry-counter", status.getPINRetryCount());
-                cardInfo.putInt("puk-retry-counter", status.getPUKRetryCount());
+                pinRetryCount = status.getPINRetryCount();
+                pukRetryCount = status.getPUKRetryCount();
             }
 
-            cardInfo.putBoolean("has-master-key?", info.hasMasterKey());
-            cardInfo.putBoolean("paired?", isPaired);
-            cardInfo.putString("instance-uid", Hex.toHexString(info.getInstanceUID()));
-            cardInfo.putString("key-uid", Hex.toHexString(info.getKeyUID()));
-            cardInfo.putString("secure-channel-pub-key", Hex.toHexString(info.getSecureChannelPubKey()));
-            cardInfo.putString("app-version", info.getAppVersionString());
-            cardInfo.putInt("free-pairing-slots", info.getFreePairingSlots());
+            CardInfoCache.Entry entry = new CardInfoCache.Entry(HexUtils.toHexString(info.getKeyUID()), cardName, isAuthentic, isPaired, pinRetryCount, pukRetryCount);
+            cardInfoCache.put(instanceUID, entry);
+            putCardInfo(cardInfo, info, entry);
         }
 
         return cardInfo;
     }
 
+    private void putCardInfo(WritableMap cardInfo, ApplicationInfo info, CardInfoCache.Entry entry) {
+        cardInfo.putBoolean("initialized?", true);
+        cardInfo.putString("card-name", entry.cardName);
+        cardInfo.putBoolean("authentic?", entry.authentic);
+
+        if (entry.paired) {
+            cardInfo.putInt("pin-retry-counter", entry.pinRetryCount);
+            cardInfo.putInt("puk-retry-counter", entry.pukRetryCount);
+        }
+
+        cardInfo.putBoolean("has-master-key?", info.hasMasterKey());
+        cardInfo.putBoolean("paired?", entry.paired);
+        cardInfo.putString("instance-uid", HexUtils.toHexString(info.getInstanceUID()));
+        cardInfo.putString("key-uid", HexUtils.toHexString(info.getKeyUID()));
+        cardInfo.putString("secure-channel-pub-key", HexUtils.toHexString(info.getSecureChannelPubKey()));
+        cardInfo.putString("app-version", info.getAppVersionString());
+        cardInfo.putInt("free-pairing-slots", info.getFreePairingSlots());
+    }
+
     public WritableMap factoryResetPost() throws IOException, APDUException {
         ApplicationInfo info = new ApplicationInfo(commandSet().select().checkOK().getData());
         Log.i(TAG, "Selecting the factory reset Keycard applet succeeded");
@@ -376,6 +773,7 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
     }
 
     public WritableMap factoryReset() throws IOException, APDUException {
+        cardInfoCache.invalidateAll();
         KeycardCommandSet cmdSet = commandSet();
         APDUResponse resp = cmdSet.select();
 
@@ -399,12 +797,12 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
     public void deriveKey(final String path, final String pin) throws IOException, APDUException {
         KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
 
-        KeyPath currentPath = new KeyPath(cmdSet.getStatus(KeycardCommandSet.GET_STATUS_P1_KEY_PATH).checkOK().getData());
-        Log.i(TAG, "Current key path: " + currentPath);
+        String currentPath = new KeyPath(cmdSet.getStatus(KeycardCommandSet.GET_STATUS_P1_KEY_PATH).checkOK().getData()).toString();
+        tracer.event("key path", "current", currentPath);
 
-        if (!currentPath.toString().equals(path)) {
+        if (!currentPath.equals(path)) {
             cmdSet.deriveKey(path).checkOK();
-            Log.i(TAG, "Derived " + path);
+            tracer.event("derived", "path", path);
         }
     }
 
@@ -413,7 +811,7 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         byte[] key = cmdSet.exportCurrentKey(true).checkOK().getData();
 
-        return Hex.toHexString(key);
+        return HexUtils.toHexString(key);
     }
 
     public String exportKeyWithPath(final String pin, final String path) throws IOException, APDUException {
@@ -421,122 +819,338 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         byte[] key = BIP32KeyPair.fromTLV(cmdSet.exportKey(path, false, true).checkOK().getData()).getPublicKey();
 
-        return Hex.toHexString(key);
+        return HexUtils.toHexString(key);
+    }
+
+    public WritableMap exportKeysForPaths(final String pin, final ReadableArray paths, final ReadableMap options) throws IOException, APDUException {
+        KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
+
+        boolean extended = options != null && options.hasKey("extended") && options.getBoolean("extended");
+        boolean withAddress = options != null && options.hasKey("address") && options.getBoolean("address");
+        byte p2 = (extended && cmdSet.getApplicationInfo().getAppVersion() >= 0x0310) ? KeycardCommandSet.EXPORT_KEY_P2_EXTENDED_PUBLIC : KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY;
+
+        String[] list = new String[paths.size()];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = paths.getString(i);
+        }
+
+        Map<String, BIP32KeyPair> keys = exportKeys(cmdSet, list, p2);
+
+        WritableMap data = Arguments.createMap();
+        for (String path : list) {
+            BIP32KeyPair keyPair = keys.get(path);
+            WritableMap key = Arguments.createMap();
+            key.putString("public-key", HexUtils.toHexString(keyPair.getPublicKey()));
+
+            if (keyPair.isExtended()) {
+                key.putString("chain-code", HexUtils.toHexString(keyPair.getChainCode()));
+            }
+
+            if (withAddress) {
+                key.putString("address", HexUtils.toHexString(keyPair.toEthereumAddress()));
+            }
+
+            data.putMap(path, key);
+        }
+
+        return data;
+    }
+
+    public WritableArray deriveAddresses(final String publicKey, final String chainCode, final int start, final int count) throws InterruptedException {
+        AddressDeriver deriver;
+
+        synchronized(lock) {
+            if (this.addressDeriver == null) {
+                this.addressDeriver = new AddressDeriver();
+            }
+
+            deriver = this.addressDeriver;
+        }
+
+        AddressDeriver.DerivedKey[] keys = deriver.derive(HexUtils.decode(publicKey), HexUtils.decode(chainCode), start, count);
+
+        WritableArray data = Arguments.createArray();
+        for (AddressDeriver.DerivedKey key : keys) {
+            if (key == null) {
+                continue;
+            }
+
+            WritableMap entry = Arguments.createMap();
+            entry.putInt("index", key.index);
+            entry.putString("address", HexUtils.toHexString(key.address));
+            entry.putString("public-key", HexUtils.toHexString(key.publicKey));
+            data.pushMap(entry);
+        }
+
+        return data;
     }
 
     public WritableMap getKeys(final String pin) throws IOException, APDUException {
         KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
 
-        byte[] tlvWhisper = cmdSet.exportKey(WHISPER_PATH, false, false).checkOK().getData();
+        byte[] tlvWhisper = cmdSet.exportKey(KeyExportSteps.WHISPER_PATH, false, false).checkOK().getData();
         BIP32KeyPair whisperKeyPair = BIP32KeyPair.fromTLV(tlvWhisper);
 
-        byte[] tlvEncryption = cmdSet.exportKey(ENCRYPTION_PATH, false, false).checkOK().getData();
+        byte[] tlvEncryption = cmdSet.exportKey(KeyExportSteps.ENCRYPTION_PATH, false, false).checkOK().getData();
         BIP32KeyPair encryptionKeyPair = BIP32KeyPair.fromTLV(tlvEncryption);
 
         ApplicationInfo info = cmdSet.getApplicationInfo();
 
         WritableMap data = Arguments.createMap();
-        data.putString("whisper-address", Hex.toHexString(whisperKeyPair.toEthereumAddress()));
-        data.putString("whisper-public-key", Hex.toHexString(whisperKeyPair.getPublicKey()));
-        data.putString("whisper-private-key", Hex.toHexString(whisperKeyPair.getPrivateKey()));
-        data.putString("encryption-public-key", Hex.toHexString(encryptionKeyPair.getPublicKey()));
-        data.putString("instance-uid", Hex.toHexString(info.getInstanceUID()));
-        data.putString("key-uid", Hex.toHexString(info.getKeyUID()));
+        data.putString("whisper-address", HexUtils.toHexString(whisperKeyPair.toEthereumAddress()));
+        data.putString("whisper-public-key", HexUtils.toHexString(whisperKeyPair.getPublicKey()));
+        data.putString("whisper-private-key", HexUtils.toHexString(whisperKeyPair.getPrivateKey()));
+        data.putString("encryption-public-key", HexUtils.toHexString(encryptionKeyPair.getPublicKey()));
+        data.putString("instance-uid", HexUtils.toHexString(info.getInstanceUID()));
+        data.putString("key-uid", HexUtils.toHexString(info.getKeyUID()));
 
         return data;
     }
 
     public WritableMap importKeys(final String pin) throws IOException, APDUException {
+        OperationCheckpoint cp = runCheckpointed("importKeys", pin, null, KeyExportSteps.IMPORT_PATHS, KeyExportSteps.IMPORT_P2);
+
+        try {
+            BIP32KeyPair encryptionKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.ENCRYPTION_PATH));
+            BIP32KeyPair masterPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.MASTER_PATH));
+            BIP32KeyPair rootKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.ROOT_PATH));
+            BIP32KeyPair whisperKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.WHISPER_PATH));
+
+            WritableMap data = Arguments.createMap();
+            data.putString("address", HexUtils.toHexString(masterPair.toEthereumAddress()));
+            data.putString("public-key", HexUtils.toHexString(masterPair.getPublicKey()));
+            data.putString("wallet-root-address", HexUtils.toHexString(rootKeyPair.toEthereumAddress()));
+            data.putString("wallet-root-public-key", HexUtils.toHexString(rootKeyPair.getPublicKey()));
+
+            if (rootKeyPair.isExtended()) {
+                data.putString("wallet-root-chain-code", HexUtils.toHexString(rootKeyPair.getChainCode()));
+            } //else { (for now we return both keys, because xpub support is not yet available)
+                BIP32KeyPair walletKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.WALLET_PATH));
+                data.putString("wallet-address", HexUtils.toHexString(walletKeyPair.toEthereumAddress()));
+                data.putString("wallet-public-key", HexUtils.toHexString(walletKeyPair.getPublicKey()));
+            //}
+
+            data.putString("whisper-address", HexUtils.toHexString(whisperKeyPair.toEthereumAddress()));
+            data.putString("whisper-public-key", HexUtils.toHexString(whisperKeyPair.getPublicKey()));
+            data.putString("whisper-private-key", HexUtils.toHexString(whisperKeyPair.getPrivateKey()));
+            data.putString("encryption-public-key", HexUtils.toHexString(encryptionKeyPair.getPublicKey()));
+            data.putString("instance-uid", cp.instanceUID);
+            data.putString("key-uid", cp.keyUID);
+
+            return data;
+        } finally {
+            cp.wipe();
+        }
+    }
+
+    public WritableMap generateAndLoadKey(final String mnemonic, final String pin) throws IOException, APDUException {
+        byte[] seed = Mnemonic.toBinarySeed(mnemonic, "");
+        return loadKeyPair(BIP32KeyPair.fromBinarySeed(seed), pin);
+    }
+
+    // Same as generateAndLoadKey, with a seed prepared by prepareSeed.
+    public WritableMap loadPreparedKey(final String handle, final String pin) throws IOException, APDUException {
+        SeedStore.Seed seed = preparedSeed(handle);
+        WritableMap data;
+
+        synchronized(seed) {
+            if (seed.isWiped()) {
+                throw new IllegalStateException("Seed expired");
+            }
+
+            data = loadKeyPair(seed.getKeyPair(), pin);
+        }
+
+        seeds.release(handle);
+        return data;
+    }
+
+    private WritableMap loadKeyPair(final BIP32KeyPair keyPair, final String pin) throws IOException, APDUException {
+        OperationCheckpoint cp = runCheckpointed("loadKey", pin, keyPair, KeyExportSteps.LOAD_PATHS, KeyExportSteps.LOAD_P2);
+
+        try {
+            BIP32KeyPair rootKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.ROOT_PATH));
+            BIP32KeyPair whisperKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.WHISPER_PATH));
+            BIP32KeyPair encryptionKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.ENCRYPTION_PATH));
+
+            WritableMap data = Arguments.createMap();
+            data.putString("address", HexUtils.toHexString(keyPair.toEthereumAddress()));
+            data.putString("public-key", HexUtils.toHexString(keyPair.getPublicKey()));
+            data.putString("wallet-root-address", HexUtils.toHexString(rootKeyPair.toEthereumAddress()));
+            data.putString("wallet-root-public-key", HexUtils.toHexString(rootKeyPair.getPublicKey()));
+
+            if (rootKeyPair.isExtended()) {
+                data.putString("wallet-root-chain-code", HexUtils.toHexString(rootKeyPair.getChainCode()));
+            } //else { (see note above)
+                BIP32KeyPair walletKeyPair = BIP32KeyPair.fromTLV(cp.get(KeyExportSteps.WALLET_PATH));
+                data.putString("wallet-address", HexUtils.toHexString(walletKeyPair.toEthereumAddress()));
+                data.putString("wallet-public-key", HexUtils.toHexString(walletKeyPair.getPublicKey()));
+            //}
+
+            data.putString("whisper-address", HexUtils.toHexString(whisperKeyPair.toEthereumAddress()));
+            data.putString("whisper-public-key", HexUtils.toHexString(whisperKeyPair.getPublicKey()));
+            data.putString("whisper-private-key", HexUtils.toHexString(whisperKeyPair.getPrivateKey()));
+            data.putString("encryption-public-key", HexUtils.toHexString(encryptionKeyPair.getPublicKey()));
+            data.putString("instance-uid", cp.instanceUID);
+            data.putString("key-uid", cp.keyUID);
+
+            return data;
+        } finally {
+            cp.wipe();
+        }
+    }
+
+    // Runs the steps of a multi-step operation: loading keyPair, if not null, then exporting each path with the
+    // corresponding P2 (extended public keys are downgraded to public keys on cards which do not support them).
+    // Completed steps are recorded in a checkpoint for the card and key. If the tag is lost, the operation waits up
+    // to resumeTimeoutMs for a card to be tapped again and continues from the checkpoint; if it does not wait or the
+    // card does not come back, the error is reported and calling the operation again on the same card resumes it.
+    // The checkpoint is returned once all steps are done and must be wiped by the caller.
+    private OperationCheckpoint runCheckpointed(String operation, String pin, BIP32KeyPair keyPair, String[] paths, byte[] p2) throws IOException, APDUException {
+        boolean resuming = false;
+
+        while (true) {
+            long connection = connectionCount();
+
+            try {
+                OperationCheckpoint cp = runSteps(operation, pin, keyPair, paths, p2, resuming);
+                checkpoint = null;
+                return cp;
+            } catch (APDUException e) {
+                // The card refused a step: there is nothing to resume.
+                clearCheckpoint();
+                throw e;
+            } catch (IOException e) {
+                if (!waitForReconnect(connection)) {
+                    // Only kept for a new call if the caller did not ask to wait for the card.
+                    if (resumeTimeoutMs > 0) {
+                        clearCheckpoint();
+                    }
+
+                    throw e;
+                }
+
+                resuming = true;
+            }
+        }
+    }
+
+    private OperationCheckpoint runSteps(String operation, String pin, BIP32KeyPair keyPair, String[] paths, byte[] p2, boolean resuming) throws IOException, APDUException {
         KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
         ApplicationInfo info = cmdSet.getApplicationInfo();
+        String instanceUID = HexUtils.toHexString(info.getInstanceUID());
+        String keyUID = HexUtils.toHexString(info.getKeyUID());
+        String targetKeyUID = keyPair == null ? keyUID : OperationCheckpoint.keyUID(keyPair.getPublicKey());
 
-        byte p2 = (info.getAppVersion() < 0x0310) ? KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY : KeycardCommandSet.EXPORT_KEY_P2_EXTENDED_PUBLIC;
+        OperationCheckpoint cp = checkpoint;
+        boolean resumed = cp != null && cp.matches(operation, instanceUID, targetKeyUID);
 
-        byte[] tlvEncryption = cmdSet.exportKey(ENCRYPTION_PATH, false, false).checkOK().getData();
-        BIP32KeyPair encryptionKeyPair = BIP32KeyPair.fromTLV(tlvEncryption);
+        // Once the key is loaded, the card must keep holding it for the exported keys to belong together.
+        if (resumed && cp.isDone(STEP_LOAD_KEY) && !keyUID.equals(targetKeyUID)) {
+            resumed = false;
+        }
 
-        byte[] tlvMaster = cmdSet.exportKey(MASTER_PATH, false, true).checkOK().getData();
-        BIP32KeyPair masterPair = BIP32KeyPair.fromTLV(tlvMaster);
+        if (!resumed) {
+            clearCheckpoint();
 
-        byte[] tlvRoot = cmdSet.exportKey(ROOT_PATH, false, p2).checkOK().getData();
-        BIP32KeyPair rootKeyPair = BIP32KeyPair.fromTLV(tlvRoot);
+            if (resuming) {
+                throw new APDUException("Operation aborted: a different card or key was tapped");
+            }
 
-        byte[] tlvWhisper = cmdSet.exportKey(WHISPER_PATH, false, false).checkOK().getData();
-        BIP32KeyPair whisperKeyPair = BIP32KeyPair.fromTLV(tlvWhisper);
+            cp = new OperationCheckpoint(operation, instanceUID, targetKeyUID);
+            checkpoint = cp;
+            scheduleExpiry(cp);
+        } else {
+            tracer.event("resuming", operation, cp.size());
+        }
 
-        WritableMap data = Arguments.createMap();
-        data.putString("address", Hex.toHexString(masterPair.toEthereumAddress()));
-        data.putString("public-key", Hex.toHexString(masterPair.getPublicKey()));
-        data.putString("wallet-root-address", Hex.toHexString(rootKeyPair.toEthereumAddress()));
-        data.putString("wallet-root-public-key", Hex.toHexString(rootKeyPair.getPublicKey()));
-        
-        if (rootKeyPair.isExtended()) {
-            data.putString("wallet-root-chain-code", Hex.toHexString(rootKeyPair.getChainCode()));
-        } //else { (for now we return both keys, because xpub support is not yet available)
-            byte[] tlvWallet = cmdSet.exportKey(WALLET_PATH, false, true).checkOK().getData();
-            BIP32KeyPair walletKeyPair = BIP32KeyPair.fromTLV(tlvWallet);
-            data.putString("wallet-address", Hex.toHexString(walletKeyPair.toEthereumAddress()));
-            data.putString("wallet-public-key", Hex.toHexString(walletKeyPair.getPublicKey()));
-        //}
-
-        data.putString("whisper-address", Hex.toHexString(whisperKeyPair.toEthereumAddress()));
-        data.putString("whisper-public-key", Hex.toHexString(whisperKeyPair.getPublicKey()));
-        data.putString("whisper-private-key", Hex.toHexString(whisperKeyPair.getPrivateKey()));
-        data.putString("encryption-public-key", Hex.toHexString(encryptionKeyPair.getPublicKey()));
-        data.putString("instance-uid", Hex.toHexString(info.getInstanceUID()));
-        data.putString("key-uid", Hex.toHexString(info.getKeyUID()));
+        if (keyPair != null && !cp.isDone(STEP_LOAD_KEY)) {
+            // The tag may have been lost after the card executed LOAD KEY but before its response arrived.
+            if (!(resumed && keyUID.equals(targetKeyUID))) {
+                cmdSet.loadKey(keyPair).checkOK();
+                log("keypair loaded to card");
+                invalidateCardInfo(cmdSet);
+                endSession();
+            }
 
-        return data;
+            cp.put(STEP_LOAD_KEY, null);
+        }
+
+        KeyExportSteps.export(cmdSet, cp, paths, p2, tracer);
+
+        return cp;
     }
 
-    public WritableMap generateAndLoadKey(final String mnemonic, final String pin) throws IOException, APDUException {
-        KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
-        byte p2 = (cmdSet.getApplicationInfo().getAppVersion() < 0x0310) ? KeycardCommandSet.EXPORT_KEY_P2_PUBLIC_ONLY : KeycardCommandSet.EXPORT_KEY_P2_EXTENDED_PUBLIC;
+    private void clearCheckpoint() {
+        if (checkpoint != null) {
+            checkpoint.wipe();
+            checkpoint = null;
+        }
+    }
 
-        byte[] seed = Mnemonic.toBinarySeed(mnemonic, "");
-        BIP32KeyPair keyPair = BIP32KeyPair.fromBinarySeed(seed);
+    // Wipes the checkpoint on the card thread, unless an operation completed or replaced it in the meantime.
+    private void dropCheckpoint(final OperationCheckpoint cp) {
+        cardExecutor.submit(CardExecutor.PRIORITY_HIGH, new Runnable() {
+            public void run() {
+                if (checkpoint != null && (cp == null || checkpoint == cp)) {
+                    tracer.event("checkpoint dropped");
+                    clearCheckpoint();
+                }
+            }
+        });
+    }
 
-        cmdSet.loadKey(keyPair).checkOK();
-        log("keypair loaded to card");
+    private void scheduleExpiry(final OperationCheckpoint cp) {
+        try {
+            expiry.schedule(new Runnable() {
+                public void run() {
+                    dropCheckpoint(cp);
+                }
+            }, OperationCheckpoint.TTL_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the checkpoint is wiped by shutdown.
+        }
+    }
 
-        byte[] tlvRoot = cmdSet.exportKey(ROOT_PATH, false, p2).checkOK().getData();
-        Log.i(TAG, "Derived " + ROOT_PATH);
-        BIP32KeyPair rootKeyPair = BIP32KeyPair.fromTLV(tlvRoot);
+    private long connectionCount() {
+        synchronized(lock) {
+            return connections;
+        }
+    }
 
-        byte[] tlvWhisper = cmdSet.exportKey(WHISPER_PATH, false, false).checkOK().getData();
-        Log.i(TAG, "Derived " + WHISPER_PATH);
-        BIP32KeyPair whisperKeyPair = BIP32KeyPair.fromTLV(tlvWhisper);
+    // Waits until a card is connected again after the given connection, for at most resumeTimeoutMs.
+    private boolean waitForReconnect(long connection) {
+        long timeout = resumeTimeoutMs;
 
-        byte[] tlvEncryption = cmdSet.exportKey(ENCRYPTION_PATH, false, false).checkOK().getData();
-        Log.i(TAG, "Derived " + ENCRYPTION_PATH);
-        BIP32KeyPair encryptionKeyPair = BIP32KeyPair.fromTLV(tlvEncryption);
+        if (timeout <= 0 || checkpoint == null) {
+            return false;
+        }
 
-        WritableMap data = Arguments.createMap();
-        data.putString("address", Hex.toHexString(keyPair.toEthereumAddress()));
-        data.putString("public-key", Hex.toHexString(keyPair.getPublicKey()));
-        data.putString("wallet-root-address", Hex.toHexString(rootKeyPair.toEthereumAddress()));
-        data.putString("wallet-root-public-key", Hex.toHexString(rootKeyPair.getPublicKey()));
-
-        if (rootKeyPair.isExtended()) {
-            data.putString("wallet-root-chain-code", Hex.toHexString(rootKeyPair.getChainCode()));
-        } //else { (see note above)
-            byte[] tlvWallet = cmdSet.exportKey(WALLET_PATH, false, true).checkOK().getData();
-            BIP32KeyPair walletKeyPair = BIP32KeyPair.fromTLV(tlvWallet);
-            data.putString("wallet-address", Hex.toHexString(walletKeyPair.toEthereumAddress()));
-            data.putString("wallet-public-key", Hex.toHexString(walletKeyPair.getPublicKey()));
-        //}
-
-        data.putString("whisper-address", Hex.toHexString(whisperKeyPair.toEthereumAddress()));
-        data.putString("whisper-public-key", Hex.toHexString(whisperKeyPair.getPublicKey()));
-        data.putString("whisper-private-key", Hex.toHexString(whisperKeyPair.getPrivateKey()));
-        data.putString("encryption-public-key", Hex.toHexString(encryptionKeyPair.getPublicKey()));
+        long deadline = System.currentTimeMillis() + timeout;
+        tracer.event("waiting for reconnection");
 
-        ApplicationInfo info = new ApplicationInfo(cmdSet.select().checkOK().getData());
+        synchronized(lock) {
+            while (this.connections == connection || this.cardChannel == null) {
+                long wait = deadline - System.currentTimeMillis();
 
-        data.putString("instance-uid", Hex.toHexString(info.getInstanceUID()));
-        data.putString("key-uid", Hex.toHexString(info.getKeyUID()));
+                if (wait <= 0) {
+                    return false;
+                }
 
-        return data;
+                try {
+                    lock.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public void setResumeTimeout(int timeoutMs) {
+        this.resumeTimeoutMs = Math.max(0, Math.min(timeoutMs, MAX_RESUME_TIMEOUT_MS));
     }
 
     public int verifyPin(final String pin) throws IOException, APDUException {
@@ -562,13 +1176,18 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         KeycardCommandSet cmdSet = authenticatedCommandSet(currentPin);
 
         cmdSet.changePIN(newPin);
+        invalidateCardInfo(cmdSet);
+        endLease();
         Log.i(TAG, "pin changed");
     }
 
     public void unblockPin(final String puk, final String newPin) throws IOException, APDUException {
         KeycardCommandSet cmdSet = securedCommandSet();
+        APDUResponse resp = cmdSet.unblockPIN(puk, newPin);
 
-        cmdSet.unblockPIN(puk, newPin).checkOK();
+        invalidateCardInfo(cmdSet);
+        resp.checkOK();
+        endLease();
         Log.i(TAG, "pin unblocked");
     }
 
@@ -577,8 +1196,10 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         cmdSet.autoUnpair();
         Log.i(TAG, "card unpaired");
-        String instanceUID = Hex.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
+        endSession();
+        String instanceUID = HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
         pairings.remove(instanceUID);
+        cardInfoCache.invalidate(instanceUID);
     }
 
     public void removeKey(final String pin) throws IOException, APDUException {
@@ -586,6 +1207,8 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         cmdSet.removeKey();
         Log.i(TAG, "key removed");
+        invalidateCardInfo(cmdSet);
+        endSession();
     }
 
     public void removeKeyWithUnpair(final String pin) throws IOException, APDUException {
@@ -599,90 +1222,192 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         cmdSet.autoUnpair();
         Log.i(TAG, "card unpaired");
+        endSession();
 
-        String instanceUID = Hex.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
+        String instanceUID = HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
         pairings.remove(instanceUID);
+        cardInfoCache.invalidate(instanceUID);
     }
 
     public String sign(final String pin, final String message) throws IOException, APDUException {
         KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
 
-        byte[] hash = Hex.decode(message);
-        RecoverableSignature signature = new RecoverableSignature(hash, cmdSet.sign(hash).checkOK().getData());
+        byte[] hash = decodeHash(message);
+
+        return toSignatureString(hash, cmdSet.sign(hash).checkOK().getData());
+    }
+
+    public String signWithPath(final String pin, final String path, final String message) throws IOException, APDUException {
+        KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
+
+        byte[] hash = decodeHash(message);
+
+        return toSignatureString(hash, signHash(cmdSet, path, hash));
+    }
 
-        Log.i(TAG, "Signed hash: " + Hex.toHexString(hash));
-        Log.i(TAG, "Recovery ID: " + signature.getRecId());
-        Log.i(TAG, "R: " + Hex.toHexString(signature.getR()));
-        Log.i(TAG, "S: " + Hex.toHexString(signature.getS()));
+    // Signs the keccak256 hash of a serialized unsigned transaction, given in hex, with the current key or the key
+    // at the given path. The transaction is hashed before the card is accessed.
+    public WritableMap signTransaction(final String pin, final String path, final String transaction) throws IOException, APDUException {
+        byte[] hash;
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            hash = Keccak.digestHex(transaction);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid transaction: " + e.getMessage(), e);
+        }
 
-        out.write(signature.getR());
-        out.write(signature.getS());
-        out.write(signature.getRecId());
+        return signDigest(pin, path, hash);
+    }
 
-        String sig = Hex.toHexString(out.toByteArray());
-        Log.i(TAG, "Signature: " + sig);
+    // Signs the EIP-712 digest of the given typed data JSON, with the current key or the key at the given path.
+    public WritableMap signTypedData(final String pin, final String path, final String typedData) throws IOException, APDUException {
+        byte[] hash;
 
-        return sig;
+        try {
+            hash = TypedDataHasher.digest(typedData);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid typed data: " + e.getMessage(), e);
+        }
+
+        return signDigest(pin, path, hash);
     }
 
-    public String signWithPath(final String pin, final String path, final String message) throws IOException, APDUException {
+    private WritableMap signDigest(String pin, String path, byte[] hash) throws IOException, APDUException {
         KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
+        byte[] data;
 
-        byte[] hash = Hex.decode(message);
+        if (path == null || path.isEmpty()) {
+            data = cmdSet.sign(hash).checkOK().getData();
+        } else {
+            data = signHash(cmdSet, path, hash);
+        }
 
-        RecoverableSignature signature;
+        WritableMap result = Arguments.createMap();
+        result.putString("signature", toSignatureString(hash, data));
+        result.putString("digest", HexUtils.toHexString(hash));
 
+        return result;
+    }
+
+    private byte[] signHash(KeycardCommandSet cmdSet, String path, byte[] hash) throws IOException, APDUException {
         if (cmdSet.getApplicationInfo().getAppVersion() < 0x0202) {
             String actualPath = new KeyPath(cmdSet.getStatus(KeycardCommandSet.GET_STATUS_P1_KEY_PATH).checkOK().getData()).toString();
             if (!actualPath.equals(path)) {
                 cmdSet.deriveKey(path).checkOK();
             }
-            signature = new RecoverableSignature(hash, cmdSet.sign(hash).checkOK().getData());
+            return cmdSet.sign(hash).checkOK().getData();
         } else {
-            signature = new RecoverableSignature(hash, cmdSet.signWithPath(hash, path, false).checkOK().getData());
+            return cmdSet.signWithPath(hash, path, false).checkOK().getData();
         }
+    }
 
-        Log.i(TAG, "Signed hash: " + Hex.toHexString(hash));
-        Log.i(TAG, "Recovery ID: " + signature.getRecId());
-        Log.i(TAG, "R: " + Hex.toHexString(signature.getR()));
-        Log.i(TAG, "S: " + Hex.toHexString(signature.getS()));
+    public WritableMap signBatch(final String pin, final ReadableArray requests) throws IOException, APDUException {
+        // Every request is checked before the card is accessed, so that a malformed one cannot abort the batch after
+        // some hashes were signed and the current key was changed.
+        String[] paths = new String[requests.size()];
+        String[] messages = new String[requests.size()];
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < requests.size(); i++) {
+            ReadableMap request = requests.getType(i) == ReadableType.Map ? requests.getMap(i) : null;
 
-        out.write(signature.getR());
-        out.write(signature.getS());
-        out.write(signature.getRecId());
+            if (request == null || !isString(request, "path") || !isString(request, "hash")) {
+                throw new IllegalArgumentException("Invalid request at index " + i + ": path and hash are required");
+            }
 
-        String sig = Hex.toHexString(out.toByteArray());
-        Log.i(TAG, "Signature: " + sig);
+            paths[i] = request.getString("path");
+            messages[i] = request.getString("hash");
+            decodeHash(messages[i]);
+        }
 
-        return sig;
-    }
+        KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
+        boolean canSignWithPath = cmdSet.getApplicationInfo().getAppVersion() >= 0x0202;
+        String originalPath = new KeyPath(cmdSet.getStatus(KeycardCommandSet.GET_STATUS_P1_KEY_PATH).checkOK().getData()).toString();
+        String currentPath = originalPath;
+
+        WritableArray signatures = Arguments.createArray();
+        WritableArray failures = Arguments.createArray();
+        String interruption = null;
+
+        for (int i = 0; i < paths.length; i++) {
+            String path = paths[i];
+            String message = messages[i];
+
+            try {
+                byte[] hash = decodeHash(message);
+                byte[] data;
+
+                // Consecutive hashes signed with the same path reuse the key derived for the first one.
+                if (path.equals(currentPath)) {
+                    data = cmdSet.sign(hash).checkOK().getData();
+                } else if (canSignWithPath) {
+                    data = cmdSet.signWithPath(hash, path, true).checkOK().getData();
+                    currentPath = path;
+                } else {
+                    cmdSet.deriveKey(path).checkOK();
+                    currentPath = path;
+                    data = cmdSet.sign(hash).checkOK().getData();
+                }
 
-    public String signPinless(final String message) throws IOException, APDUException {
-        CashCommandSet cmdSet = cashCommandSet();
-        cmdSet.select().checkOK();
+                String sig = toSignatureString(hash, data);
+                signatures.pushMap(batchSignature(i, path, message, sig));
+                eventEmitter.emit("keyCardBatchSignature", batchSignature(i, path, message, sig));
+            } catch (APDUException e) {
+                WritableMap failure = Arguments.createMap();
+                failure.putInt("index", i);
+                failure.putString("error", e.getMessage());
+                failures.pushMap(failure);
+            } catch (IOException e) {
+                tracer.event("batch signing interrupted", "error", e.getMessage());
+                interruption = e.getMessage();
+                break;
+            }
+        }
 
-        byte[] hash = Hex.decode(message);
-        RecoverableSignature signature = new RecoverableSignature(hash, cmdSet.sign(hash).checkOK().getData());
+        // The signatures are returned even if the current key cannot be restored: it is then restored by the next
+        // authenticated operation on this card.
+        boolean restoreFailed = false;
 
-        Log.i(TAG, "Signed hash: " + Hex.toHexString(hash));
-        Log.i(TAG, "Recovery ID: " + signature.getRecId());
-        Log.i(TAG, "R: " + Hex.toHexString(signature.getR()));
-        Log.i(TAG, "S: " + Hex.toHexString(signature.getS()));
+        if (!currentPath.equals(originalPath)) {
+            if (interruption == null) {
+                try {
+                    cmdSet.deriveKey(originalPath).checkOK();
+                } catch (IOException | APDUException e) {
+                    tracer.event("current key not restored", "error", e.getMessage());
+                    interruption = e.getMessage();
+                    restoreFailed = true;
+                }
+            } else {
+                restoreFailed = true;
+            }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (restoreFailed) {
+                this.pendingKeyPath = originalPath;
+                this.pendingKeyPathUID = HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
+            }
+        }
+
+        WritableMap summary = Arguments.createMap();
+        summary.putInt("total", requests.size());
+        summary.putInt("signed", signatures.size());
+        summary.putArray("signatures", signatures);
+        summary.putArray("failures", failures);
+
+        summary.putBoolean("restore-failed?", restoreFailed);
+
+        if (interruption != null) {
+            summary.putString("error", interruption);
+        }
+
+        return summary;
+    }
 
-        out.write(signature.getR());
-        out.write(signature.getS());
-        out.write(signature.getRecId());
+    public String signPinless(final String message) throws IOException, APDUException {
+        CashCommandSet cmdSet = cashCommandSet();
+        cmdSet.select().checkOK();
 
-        String sig = Hex.toHexString(out.toByteArray());
-        Log.i(TAG, "Signature: " + sig);
+        byte[] hash = decodeHash(message);
 
-        return sig;
+        return toSignatureString(hash, cmdSet.sign(hash).checkOK().getData());
     }
 
     public String getCardName() throws IOException, APDUException {
@@ -696,53 +1421,257 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
         Metadata m = new Metadata(name);
         cmdSet.storeData(m.toByteArray(), KeycardCommandSet.STORE_DATA_P1_PUBLIC).checkOK();
+        invalidateCardInfo(cmdSet);
     }    
 
     public WritableMap verifyCard(final String challenge) throws IOException, APDUException {
         KeycardCommandSet cmdSet = commandSet();
         cmdSet.select().checkOK();
-        byte[] rawChallenge = Hex.decode(challenge);
+        byte[] rawChallenge = HexUtils.decode(challenge);
         byte[] data = cmdSet.identifyCard(rawChallenge).checkOK().getData();
         byte[] caPubKey = Certificate.verifyIdentity(rawChallenge, data);
 
         WritableMap out = Arguments.createMap();
-        out.putString("ca-public-key", Hex.toHexString(caPubKey));
-        out.putString("tlv-data", Hex.toHexString(data));
+        out.putString("ca-public-key", HexUtils.toHexString(caPubKey));
+        out.putString("tlv-data", HexUtils.toHexString(data));
 
         return out;
     }
 
     public void setPairings(ReadableMap newPairings) {
-        pairings.clear();
+        HashMap<String, String> all = new HashMap<>();
         Iterator<Map.Entry<String,Object>> i = newPairings.getEntryIterator();
         while (i.hasNext()) {
             Map.Entry<String, Object> entry = i.next();
             String value = ((ReadableMap) entry.getValue()).getString("pairing");
-            pairings.put(entry.getKey(), value);
+            all.put(entry.getKey(), value);
         }
+
+        pairings.setAll(all);
+        cardInfoCache.invalidateAll();
+    }
+
+    public void registerPairingPassword(String password) {
+        pairingSecrets.register(password);
+    }
+
+    public void addPairing(String instanceUID, String pairing) {
+        pairings.put(instanceUID, pairing);
+        cardInfoCache.invalidate(instanceUID);
+    }
+
+    public void removePairing(String instanceUID) {
+        pairings.remove(instanceUID);
+        cardInfoCache.invalidate(instanceUID);
     }
 
     public void setCertificationAuthorities(ReadableArray newCAPubKeys) {
-        this.caPubKeys = new String[newCAPubKeys.size()];
+        HashSet<ByteBuffer> cas = new HashSet<>(newCAPubKeys.size() * 2);
 
         for (int i = 0; i < newCAPubKeys.size(); i++) {
-            this.caPubKeys[i] = newCAPubKeys.getString(i);
-        }        
+            try {
+                cas.add(ByteBuffer.wrap(HexUtils.decode(newCAPubKeys.getString(i))));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid CA public key: " + newCAPubKeys.getString(i), e);
+            }
+        }
+
+        this.caPubKeys = cas;
+    }
+
+    public void setAuthenticityCacheTTL(int ttlMs) {
+        identityCache.setTTL(ttlMs);
     }
 
     public void setOneTimeVerificationSkip(String instanceUID) {
         this.skipVerificationUID = instanceUID;    
     }
 
+    public WritableMap getSessionStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("handshakes", handshakes.get());
+        stats.putDouble("handshakes-saved", handshakesSaved.get());
+
+        return stats;
+    }
+
+    public WritableMap getMetrics() {
+        WritableMap commands = Arguments.createMap();
+        long securedCommands = 0;
+
+        for (int ins = 0; ins < 256; ins++) {
+            long count = metrics.get(ins, ChannelMetrics.COUNT);
+
+            if (count == 0) {
+                continue;
+            }
+
+            WritableMap command = Arguments.createMap();
+            command.putDouble("count", count);
+            command.putDouble("total-ms", metrics.get(ins, ChannelMetrics.TOTAL_NANOS) / 1000000.0);
+            command.putDouble("average-ms", metrics.get(ins, ChannelMetrics.TOTAL_NANOS) / 1000000.0 / count);
+            command.putDouble("max-ms", metrics.get(ins, ChannelMetrics.MAX_NANOS) / 1000000.0);
+            command.putDouble("bytes-sent", metrics.get(ins, ChannelMetrics.BYTES_SENT));
+            command.putDouble("bytes-received", metrics.get(ins, ChannelMetrics.BYTES_RECEIVED));
+            command.putDouble("sw-ok", metrics.get(ins, ChannelMetrics.SW_OK));
+            command.putDouble("sw-warning", metrics.get(ins, ChannelMetrics.SW_WARNING));
+            command.putDouble("sw-error", metrics.get(ins, ChannelMetrics.SW_ERROR));
+            command.putDouble("io-errors", metrics.get(ins, ChannelMetrics.IO_ERRORS));
+            command.putDouble("secured", metrics.get(ins, ChannelMetrics.SECURED));
+
+            WritableArray histogram = Arguments.createArray();
+            for (int b = 0; b < ChannelMetrics.BUCKETS; b++) {
+                histogram.pushDouble(metrics.get(ins, ChannelMetrics.HISTOGRAM + b));
+            }
+            command.putArray("histogram", histogram);
+
+            commands.putMap(String.format("%02x", ins), command);
+            securedCommands += metrics.get(ins, ChannelMetrics.SECURED);
+        }
+
+        WritableArray bounds = Arguments.createArray();
+        for (int b = 0; b < ChannelMetrics.BUCKETS; b++) {
+            bounds.pushDouble(ChannelMetrics.bucketBound(b));
+        }
+
+        // The handshake is OPEN SECURE CHANNEL followed by MUTUALLY AUTHENTICATE, every wrapped command and response
+        // carries a 16 bytes MAC.
+        int open = InstrumentedCardChannel.INS_OPEN_SECURE_CHANNEL;
+        int auth = InstrumentedCardChannel.INS_MUTUALLY_AUTHENTICATE;
+
+        WritableMap secureChannel = Arguments.createMap();
+        secureChannel.putDouble("handshakes", metrics.get(auth, ChannelMetrics.SW_OK));
+        secureChannel.putDouble("handshake-ms", (metrics.get(open, ChannelMetrics.TOTAL_NANOS) + metrics.get(auth, ChannelMetrics.TOTAL_NANOS)) / 1000000.0);
+        secureChannel.putDouble("handshake-bytes", metrics.get(open, ChannelMetrics.BYTES_SENT) + metrics.get(open, ChannelMetrics.BYTES_RECEIVED) + metrics.get(auth, ChannelMetrics.BYTES_SENT) + metrics.get(auth, ChannelMetrics.BYTES_RECEIVED));
+        secureChannel.putDouble("secured-commands", securedCommands);
+        secureChannel.putDouble("mac-bytes", securedCommands * 32);
+
+        WritableMap out = Arguments.createMap();
+        out.putMap("commands", commands);
+        out.putMap("secure-channel", secureChannel);
+        out.putArray("histogram-bounds-ms", bounds);
+
+        return out;
+    }
+
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public void setTracing(boolean enabled, boolean redact) {
+        tracer.setEnabled(enabled, redact);
+    }
+
+    public WritableArray getTrace() {
+        WritableArray out = Arguments.createArray();
+
+        for (String line : tracer.dump()) {
+            out.pushString(line);
+        }
+
+        return out;
+    }
+
+    public int flushTrace(File file) throws IOException {
+        return tracer.flush(file);
+    }
+
+    public void beginAuthenticatedSession(final String pin, final int maxOps, final int ttlMs) throws IOException, APDUException {
+        KeycardCommandSet cmdSet = authenticatedCommandSet(pin);
+
+        synchronized(lock) {
+            if (this.session == null || this.session.getCommandSet() != cmdSet) {
+                throw new IOException(TAG_LOST);
+            }
+
+            this.session.beginLease(pin, maxOps, ttlMs);
+        }
+
+        tracer.event("authenticated session started");
+    }
+
+    // Ending the session also drops what an interrupted operation left behind, which may include private keys.
+    public void endAuthenticatedSession() {
+        endLease();
+        dropCheckpoint(null);
+    }
+
+    private void endLease() {
+        synchronized(lock) {
+            if (this.session != null) {
+                this.session.endLease();
+            }
+        }
+    }
+
+    private void invalidateCardInfo(KeycardCommandSet cmdSet) {
+        cardInfoCache.invalidate(HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID()));
+    }
+
     private KeycardCommandSet authenticatedCommandSet(String pin) throws IOException, APDUException {
         KeycardCommandSet cmdSet = securedCommandSet();
-        cmdSet.verifyPIN(pin).checkOK();
-        Log.i(TAG, "pin verified");
+        boolean leased = false;
+
+        synchronized(lock) {
+            if (this.session != null && this.session.getCommandSet() == cmdSet && this.session.useLease(pin)) {
+                tracer.event("pin already verified");
+                this.session.setAuthenticated(pin);
+                leased = true;
+            }
+        }
+
+        if (leased) {
+            restoreKeyPath(cmdSet);
+            return cmdSet;
+        }
+
+        APDUResponse resp = cmdSet.verifyPIN(pin);
+
+        synchronized(lock) {
+            if (!resp.isOK()) {
+                endLease();
+            } else if (this.session != null && this.session.getCommandSet() == cmdSet) {
+                this.session.setAuthenticated(pin);
+            }
+        }
+
+        cardInfoCache.pinVerified(HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID()), resp.isOK());
+        resp.checkOK();
+        tracer.event("pin verified");
+
+        restoreKeyPath(cmdSet);
 
         return cmdSet;
     }
 
+    private void restoreKeyPath(KeycardCommandSet cmdSet) throws IOException, APDUException {
+        if (pendingKeyPath == null || !pendingKeyPathUID.equals(HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID()))) {
+            return;
+        }
+
+        // A refusal means the card has no key to derive from any more, e.g. it was removed, so there is nothing
+        // left to restore.
+        APDUResponse resp = cmdSet.deriveKey(pendingKeyPath);
+        tracer.event(resp.isOK() ? "current key restored" : "current key not restored", "sw", resp.getSw());
+        pendingKeyPath = null;
+        pendingKeyPathUID = null;
+    }
+
     private KeycardCommandSet securedCommandSet() throws IOException, APDUException {
+        synchronized(lock) {
+            if (this.session != null && this.session.isBoundTo(this.cardChannel)) {
+                handshakesSaved.incrementAndGet();
+                this.warmInfo = null;
+                this.pinReverified = false;
+                this.session.beginOperation();
+                return this.session.getCommandSet();
+            }
+        }
+
         KeycardCommandSet cmdSet = commandSet();
         cmdSet.select().checkOK();
         openSecureChannel(cmdSet);
@@ -750,10 +1679,81 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         return cmdSet;
     }
 
+    // Called by the command set of the current session when the card rejected a command because it dropped the
+    // secure channel on its side. The secure channel is reopened over the same command set and, if the operation in
+    // progress had verified the PIN, the PIN is verified again, after which the command is sent once more. Every
+    // verification may cost a PIN attempt, so the PIN is verified again at most once per operation: a second loss
+    // of the secure channel in an operation which verified the PIN fails the command.
+    private final SessionCommandSet.Reopener reopener = new SessionCommandSet.Reopener() {
+        @Override
+        public boolean reopen(SessionCommandSet cmdSet) throws IOException, APDUException {
+            String pin;
+
+            synchronized(lock) {
+                if (session == null || session.getCommandSet() != cmdSet) {
+                    return false;
+                }
+
+                pin = session.getOperationPin();
+
+                if (pin != null && pinReverified) {
+                    return false;
+                }
+
+                pinReverified = pin != null;
+                closeSession();
+            }
+
+            tracer.event("secure channel lost, reopening");
+            cmdSet.select().checkOK();
+            openSecureChannel(cmdSet);
+
+            if (pin != null) {
+                APDUResponse resp = cmdSet.verifyPIN(pin);
+
+                if (!resp.isOK()) {
+                    endLease();
+                    return false;
+                }
+
+                synchronized(lock) {
+                    if (session != null && session.getCommandSet() == cmdSet) {
+                        session.setAuthenticated(pin);
+                    }
+                }
+
+                tracer.event("pin verified");
+            }
+
+            return true;
+        }
+    };
+
+    // Drops the current session, wiping the PIN it holds. Must be called with the lock held.
+    private void closeSession() {
+        if (this.session != null) {
+            this.session.close();
+            this.session = null;
+        }
+    }
+
+    private void endSession() {
+        synchronized(lock) {
+            closeSession();
+        }
+    }
+
+    // All callers of the command set factories below select an applet, which closes any secure channel open on
+    // the card, so the current session is dropped. Like the session, the warm-up info is dropped as soon as an
+    // operation starts, as the operation may change what it describes.
     private KeycardCommandSet commandSet() throws IOException {
         synchronized(lock) {
+            closeSession();
+            this.warmInfo = null;
+            this.pinReverified = false;
+
             if (this.cardChannel != null) {
-                return new KeycardCommandSet(this.cardChannel);
+                return new SessionCommandSet(this.cardChannel, reopener);
             }
         }
 
@@ -762,6 +1762,9 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
     private CashCommandSet cashCommandSet() throws IOException {
         synchronized(lock) {
+            closeSession();
+            this.warmInfo = null;
+
             if (this.cardChannel != null) {
                 return new CashCommandSet(this.cardChannel);
             }
@@ -772,6 +1775,9 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
 
     private GlobalPlatformCommandSet gpCommandSet() throws IOException {
         synchronized(lock) {
+            closeSession();
+            this.warmInfo = null;
+
             if (this.cardChannel != null) {
                 return new GlobalPlatformCommandSet(this.cardChannel);
             }
@@ -780,6 +1786,150 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
         throw new IOException(TAG_LOST);
     }
 
+    // Exports the public keys of all given paths. Paths sharing a common parent are exported relative to it: the
+    // parent is made the current key once and its descendants are derived from there instead of from the master
+    // key. The current key path is restored afterwards.
+    private Map<String, BIP32KeyPair> exportKeys(KeycardCommandSet cmdSet, String[] paths, byte p2) throws IOException, APDUException {
+        Map<String, BIP32KeyPair> keys = new HashMap<>();
+
+        if (paths.length == 0) {
+            return keys;
+        }
+
+        String[] sorted = paths.clone();
+        Arrays.sort(sorted);
+
+        String originalPath = new KeyPath(cmdSet.getStatus(KeycardCommandSet.GET_STATUS_P1_KEY_PATH).checkOK().getData()).toString();
+        String currentPath = originalPath;
+
+        boolean completed = false;
+
+        // The current key must be restored even if an export fails, as the session, and with it the current key,
+        // is reused by the next operation, which would otherwise sign with the wrong key.
+        try {
+            for (int i = 0; i < sorted.length; i++) {
+                String path = sorted[i];
+
+                if (keys.containsKey(path)) {
+                    continue;
+                }
+
+                if (i + 1 < sorted.length) {
+                    String parent = commonPath(path, sorted[i + 1]);
+                    int depth = pathDepth(parent);
+
+                    if (depth >= 2 && depth > pathDepth(commonPath(path, currentPath))) {
+                        cmdSet.deriveKey(parent).checkOK();
+                        currentPath = parent;
+                    }
+                }
+
+                String exportPath = path;
+                if (pathDepth(currentPath) > 0 && path.startsWith(currentPath + "/")) {
+                    exportPath = "." + path.substring(currentPath.length());
+                }
+
+                keys.put(path, BIP32KeyPair.fromTLV(cmdSet.exportKey(exportPath, false, p2).checkOK().getData()));
+            }
+
+            completed = true;
+        } finally {
+            if (!currentPath.equals(originalPath)) {
+                try {
+                    cmdSet.deriveKey(originalPath).checkOK();
+                } catch (IOException | APDUException e) {
+                    // The current key is persisted by the card: it is restored by the next authenticated operation
+                    // on this card, before it can be used.
+                    this.pendingKeyPath = originalPath;
+                    this.pendingKeyPathUID = HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
+
+                    if (completed) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    private static String commonPath(String a, String b) {
+        String[] as = a.split("/");
+        String[] bs = b.split("/");
+        StringBuilder common = new StringBuilder();
+
+        for (int i = 0; i < as.length && i < bs.length && as[i].equals(bs[i]); i++) {
+            if (i > 0) {
+                common.append('/');
+            }
+            common.append(as[i]);
+        }
+
+        return common.toString();
+    }
+
+    private static int pathDepth(String path) {
+        int depth = 0;
+
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+
+        return depth;
+    }
+
+    private WritableMap batchSignature(int index, String path, String hash, String signature) {
+        WritableMap out = Arguments.createMap();
+        out.putInt("index", index);
+        out.putString("path", path);
+        out.putString("hash", hash);
+        out.putString("signature", signature);
+
+        return out;
+    }
+
+    private static boolean isString(ReadableMap map, String key) {
+        return map.hasKey(key) && map.getType(key) == ReadableType.String;
+    }
+
+    private byte[] decodeHash(String message) {
+        if (message.length() != hashBuffer.length * 2 || HexUtils.decode(message, hashBuffer, 0) < 0) {
+            throw new IllegalArgumentException("Invalid hash: " + message);
+        }
+
+        return hashBuffer;
+    }
+
+    private String toSignatureString(byte[] hash, byte[] data) throws APDUException {
+        byte[] out;
+
+        try {
+            out = SignatureRecovery.toEthereumSignature(hash, data);
+        } catch (IllegalArgumentException e) {
+            throw new APDUException("Invalid signature");
+        }
+
+        tracer.sensitive("signature", "hash", hash);
+        tracer.event("signature", "recovery-id", out[SignatureRecovery.SIGNATURE_LENGTH - 1]);
+        tracer.sensitive("signature", "signature", out);
+
+        return HexUtils.toHexString(out);
+    }
+
+    private void traceApplicationInfo(ApplicationInfo info) {
+        if (!tracer.isEnabled()) {
+            return;
+        }
+
+        tracer.sensitive("application info", "instance-uid", info.getInstanceUID());
+        tracer.sensitive("application info", "key-uid", info.getKeyUID());
+        tracer.sensitive("application info", "secure-channel-pub-key", info.getSecureChannelPubKey());
+        tracer.event("application info", "app-version", info.getAppVersionString());
+        tracer.event("application info", "free-pairing-slots", info.getFreePairingSlots());
+    }
+
     private String getCardNameOrDefault(KeycardCommandSet cmdSet) throws IOException, APDUException {
         if (cmdSet.getApplicationInfo().getAppVersion() < 0x0300) {
             return "";
@@ -796,18 +1946,23 @@ public class SmartCard extends BroadcastReceiver implements CardListener {
     }
 
     private void openSecureChannel(KeycardCommandSet cmdSet) throws IOException, APDUException {
-        String instanceUID = Hex.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
-        String pairingBase64 = pairings.get(instanceUID);
+        String instanceUID = HexUtils.toHexString(cmdSet.getApplicationInfo().getInstanceUID());
+        Pairing pairing = pairings.get(instanceUID);
 
-        if (pairingBase64 == null) {
+        if (pairing == null) {
             throw new APDUException("No pairing found");
         }
 
-        Pairing pairing = new Pairing(pairingBase64);
         cmdSet.setPairing(pairing);
 
         cmdSet.autoOpenSecureChannel();
-        Log.i(TAG, "secure channel opened");
+        handshakes.incrementAndGet();
+        tracer.event("secure channel opened");
+
+        synchronized(lock) {
+            closeSession();
+            this.session = new CardSession(this.cardChannel, cmdSet, instanceUID);
+        }
     }
 
 }
@@ -0,0 +1,309 @@
+package im.status.ethereum.keycard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Structured tracing of card operations. Each operation runs in a span and the events recorded while it is active,
+ * including one per APDU with the phase it belongs to (select, secure channel, PIN or command), are attributed to
+ * it. Events are kept as raw values in a fixed-size ring buffer and only formatted when the trace is dumped or
+ * flushed to a file.
+ *
+ * Tracing is off by default. When off, every method returns after reading a single volatile flag, and callers pass
+ * values as they are (byte arrays, ints) so no string is built. Values recorded as sensitive are replaced by a
+ * placeholder at record time unless redaction is turned off, so they never reach the buffer.
+ */
+public class Tracer {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public static final String PHASE_SELECT = "select";
+    public static final String PHASE_SECURE_CHANNEL = "secure-channel";
+    public static final String PHASE_PIN = "pin";
+    public static final String PHASE_COMMAND = "command";
+
+    private static final String REDACTED = "<redacted>";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte KIND_BEGIN = 0;
+    private static final byte KIND_END = 1;
+    private static final byte KIND_EVENT = 2;
+    private static final byte KIND_VALUE = 3;
+    private static final byte KIND_APDU = 4;
+
+    public static class Span {
+        private final Tracer tracer;
+        private final long id;
+        private final String name;
+        private final long start;
+
+        private Span(Tracer tracer, long id, String name, long start) {
+            this.tracer = tracer;
+            this.id = id;
+            this.name = name;
+            this.start = start;
+        }
+
+        public void end() {
+            if (tracer != null) {
+                tracer.end(this);
+            }
+        }
+    }
+
+    private static final Span NO_SPAN = new Span(null, 0, "", 0);
+
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+    private final Object lock = new Object();
+    private final int capacity;
+    private final long origin;
+
+    private volatile boolean enabled;
+    private volatile boolean redact;
+
+    // The ring buffer, as parallel arrays indexed by sequence number modulo capacity.
+    private final long[] times;
+    private final long[] spans;
+    private final byte[] kinds;
+    private final String[] names;
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] numbers;
+    private final long[] durations;
+    private long next;
+    private long nextSpan;
+
+    public Tracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Tracer(int capacity) {
+        this.capacity = capacity;
+        this.origin = System.nanoTime();
+        this.redact = true;
+        this.times = new long[capacity];
+        this.spans = new long[capacity];
+        this.kinds = new byte[capacity];
+        this.names = new String[capacity];
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.numbers = new int[capacity];
+        this.durations = new long[capacity];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns tracing on or off. Turning it on clears the buffer.
+     */
+    public void setEnabled(boolean enabled, boolean redact) {
+        synchronized(lock) {
+            if (enabled && !this.enabled) {
+                clear();
+            }
+
+            this.redact = redact;
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Starts a span for an operation on the calling thread. The returned span must be ended on the same thread.
+     */
+    public Span begin(String name) {
+        if (!enabled) {
+            return NO_SPAN;
+        }
+
+        long now = System.nanoTime();
+        Span span;
+
+        synchronized(lock) {
+            span = new Span(this, ++nextSpan, name, now);
+            record(now, span.id, KIND_BEGIN, name, null, null, 0, 0);
+        }
+
+        current.set(span);
+        return span;
+    }
+
+    private void end(Span span) {
+        if (current.get() == span) {
+            current.remove();
+        }
+
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        synchronized(lock) {
+            record(now, span.id, KIND_END, span.name, null, null, 0, now - span.start);
+        }
+    }
+
+    public void event(String name) {
+        if (enabled) {
+            add(KIND_EVENT, name, null, null, 0, 0);
+        }
+    }
+
+    public void event(String name, String key, int value) {
+        if (enabled) {
+            add(KIND_VALUE, name, key, null, value, 0);
+        }
+    }
+
+    public void event(String name, String key, String value) {
+        if (enabled) {
+            add(KIND_EVENT, name, key, value, 0, 0);
+        }
+    }
+
+    /**
+     * Records a value which can identify the card, its keys or what is being signed, such as UIDs, public keys,
+     * hashes and signatures.
+     */
+    public void sensitive(String name, String key, byte[] value) {
+        if (enabled) {
+            add(KIND_EVENT, name, key, redact ? REDACTED : value.clone(), 0, 0);
+        }
+    }
+
+    public void sensitive(String name, String key, String value) {
+        if (enabled) {
+            add(KIND_EVENT, name, key, redact ? REDACTED : value, 0, 0);
+        }
+    }
+
+    /**
+     * Records an exchange with the card. sw is -1 if the exchange failed with an I/O error.
+     */
+    public void apdu(String phase, int ins, int sw, long nanos) {
+        if (enabled) {
+            add(KIND_APDU, phase, null, null, (ins << 16) | (sw & 0xffff), sw < 0 ? -1 : nanos);
+        }
+    }
+
+    private void add(byte kind, String name, String key, Object value, int number, long duration) {
+        Span span = current.get();
+        long now = System.nanoTime();
+
+        synchronized(lock) {
+            record(now, span == null ? 0 : span.id, kind, name, key, value, number, duration);
+        }
+    }
+
+    private void record(long time, long span, byte kind, String name, String key, Object value, int number, long duration) {
+        int i = (int) (next++ % capacity);
+        times[i] = time;
+        spans[i] = span;
+        kinds[i] = kind;
+        names[i] = name;
+        keys[i] = key;
+        values[i] = value;
+        numbers[i] = number;
+        durations[i] = duration;
+    }
+
+    private void clear() {
+        for (int i = 0; i < capacity; i++) {
+            names[i] = null;
+            keys[i] = null;
+            values[i] = null;
+        }
+
+        next = 0;
+    }
+
+    /**
+     * Formats the buffered events, oldest first.
+     */
+    public List<String> dump() {
+        synchronized(lock) {
+            long first = Math.max(0, next - capacity);
+            List<String> lines = new ArrayList<>((int) (next - first));
+
+            for (long seq = first; seq < next; seq++) {
+                lines.add(format((int) (seq % capacity)));
+            }
+
+            return lines;
+        }
+    }
+
+    /**
+     * Appends the buffered events to the given file and clears the buffer. Returns the number of events written.
+     */
+    public int flush(File file) throws IOException {
+        List<String> lines;
+
+        synchronized(lock) {
+            lines = dump();
+            clear();
+        }
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(file, true), UTF_8);
+
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+
+        return lines.size();
+    }
+
+    private String format(int i) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(String.format(Locale.US, "%10.3f", (times[i] - origin) / 1000000.0));
+
+        if (spans[i] != 0) {
+            sb.append(" #").append(spans[i]);
+        }
+
+        switch (kinds[i]) {
+            case KIND_BEGIN:
+                sb.append(" begin ").append(names[i]);
+                break;
+            case KIND_END:
+                sb.append(" end ").append(names[i]).append(String.format(Locale.US, " %.3fms", durations[i] / 1000000.0));
+                break;
+            case KIND_VALUE:
+                sb.append(' ').append(names[i]).append(' ').append(keys[i]).append('=').append(numbers[i]);
+                break;
+            case KIND_APDU:
+                sb.append(" apdu ").append(names[i]).append(String.format(Locale.US, " ins=%02x", numbers[i] >>> 16));
+
+                if (durations[i] < 0) {
+                    sb.append(" io-error");
+                } else {
+                    sb.append(String.format(Locale.US, " sw=%04x %.3fms", numbers[i] & 0xffff, durations[i] / 1000000.0));
+                }
+                break;
+            default:
+                sb.append(' ').append(names[i]);
+
+                if (keys[i] != null) {
+                    Object value = values[i];
+                    sb.append(' ').append(keys[i]).append('=');
+                    sb.append(value instanceof byte[] ? HexUtils.toHexString((byte[]) value) : String.valueOf(value));
+                }
+                break;
+        }
+
+        return sb.toString();
+    }
+}
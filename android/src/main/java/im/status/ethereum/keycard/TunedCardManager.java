@@ -0,0 +1,90 @@
+package im.status.ethereum.keycard;
+
+import android.nfc.Tag;
+import android.nfc.tech.IsoDep;
+import android.util.Log;
+
+import im.status.keycard.android.NFCCardManager;
+
+/**
+ * An NFCCardManager which applies the transceive timeout of the reader mode configuration to every discovered tag
+ * and, if requested, records whether the tag accepts extended length APDUs.
+ *
+ * The presence check delay of the configuration is not applied here: the platform only takes it when reader mode is
+ * enabled, so a new delay, including one adapted to the measured latencies, needs reader mode to be enabled again.
+ */
+public class TunedCardManager extends NFCCardManager {
+    private static final String TAG = "TunedCardManager";
+
+    private volatile ReaderModeConfig config;
+    private volatile int appliedTimeoutMs = 0;
+    private volatile Boolean extendedLength = null;
+    private volatile int maxTransceiveLength = 0;
+
+    public TunedCardManager() {
+        this.config = ReaderModeConfig.defaults();
+    }
+
+    public void configure(ReaderModeConfig config) {
+        this.config = config;
+    }
+
+    // The timeout is set before the tag is connected and handed to the card listener, so that the first commands
+    // already run with it. The library sets its own default timeout once connected, so it is set again afterwards.
+    @Override
+    public void onTagDiscovered(Tag tag) {
+        ReaderModeConfig config = this.config;
+        IsoDep isoDep = IsoDep.get(tag);
+
+        applyTimeout(isoDep, config);
+        super.onTagDiscovered(tag);
+
+        if (isoDep == null) {
+            return;
+        }
+
+        try {
+            applyTimeout(isoDep, config);
+            appliedTimeoutMs = isoDep.getTimeout();
+
+            if (config.probeExtendedLength) {
+                extendedLength = isoDep.isExtendedLengthApduSupported();
+                maxTransceiveLength = isoDep.getMaxTransceiveLength();
+            }
+        } catch (SecurityException e) {
+            // The tag left the field before it could be configured.
+            Log.d(TAG, e.getMessage());
+        }
+    }
+
+    private static void applyTimeout(IsoDep isoDep, ReaderModeConfig config) {
+        if (isoDep == null || config.transceiveTimeoutMs <= 0) {
+            return;
+        }
+
+        try {
+            isoDep.setTimeout(config.transceiveTimeoutMs);
+        } catch (SecurityException e) {
+            // The tag left the field, the library reports it.
+            Log.d(TAG, e.getMessage());
+        }
+    }
+
+    /**
+     * The transceive timeout in effect for the last tag, or 0 if no tag was discovered yet.
+     */
+    public int getAppliedTimeout() {
+        return appliedTimeoutMs;
+    }
+
+    /**
+     * Whether the last probed tag supports extended length APDUs, or null if no tag was probed.
+     */
+    public Boolean isExtendedLengthSupported() {
+        return extendedLength;
+    }
+
+    public int getMaxTransceiveLength() {
+        return maxTransceiveLength;
+    }
+}
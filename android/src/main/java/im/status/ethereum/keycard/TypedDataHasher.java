@@ -0,0 +1,347 @@
+package im.status.ethereum.keycard;
+
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the EIP-712 digest of typed data in the JSON format of eth_signTypedData_v4: an object holding types,
+ * primaryType, domain and message. The digest is keccak256(0x1901 || hashStruct(EIP712Domain, domain) ||
+ * hashStruct(primaryType, message)).
+ *
+ * Structs are encoded straight into the digest of their hashStruct, one 32 bytes word at a time, so the encoding
+ * of a struct is never held in memory as a whole. The type strings and type hashes are computed once per type.
+ *
+ * An instance is bound to the types of one typed data object and is not thread safe. Malformed input is reported
+ * with an IllegalArgumentException.
+ */
+public class TypedDataHasher {
+    private static final String DOMAIN_TYPE = "EIP712Domain";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Field {
+        final String name;
+        final String type;
+
+        Field(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, List<Field>> types;
+    private final Map<String, byte[]> typeHashes;
+    private final byte[] word;
+
+    public TypedDataHasher(JSONObject types) {
+        this.types = new HashMap<>();
+        this.typeHashes = new HashMap<>();
+        this.word = new byte[32];
+
+        try {
+            Iterator<String> names = types.keys();
+
+            while (names.hasNext()) {
+                String name = names.next();
+                JSONArray members = types.getJSONArray(name);
+                List<Field> fields = new ArrayList<>(members.length());
+
+                for (int i = 0; i < members.length(); i++) {
+                    JSONObject member = members.getJSONObject(i);
+                    fields.add(new Field(member.getString("name"), member.getString("type")));
+                }
+
+                this.types.put(name, fields);
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid types: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The digest to sign for the given typed data JSON.
+     */
+    public static byte[] digest(String typedData) {
+        try {
+            JSONObject json = new JSONObject(typedData);
+            TypedDataHasher hasher = new TypedDataHasher(json.getJSONObject("types"));
+            return hasher.digest(json.getString("primaryType"), json.getJSONObject("domain"), json.getJSONObject("message"));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid typed data: " + e.getMessage());
+        }
+    }
+
+    public byte[] digest(String primaryType, JSONObject domain, JSONObject message) {
+        KeccakDigest keccak = Keccak.newDigest();
+        keccak.update((byte) 0x19);
+        keccak.update((byte) 0x01);
+        keccak.update(hashStruct(DOMAIN_TYPE, domain), 0, 32);
+
+        // A primary type of EIP712Domain signs the domain alone.
+        if (!DOMAIN_TYPE.equals(primaryType)) {
+            keccak.update(hashStruct(primaryType, message), 0, 32);
+        }
+
+        return Keccak.doFinal(keccak);
+    }
+
+    public byte[] hashStruct(String type, JSONObject data) {
+        List<Field> fields = fields(type);
+        KeccakDigest keccak = Keccak.newDigest();
+        keccak.update(typeHash(type), 0, 32);
+
+        for (Field field : fields) {
+            if (!data.has(field.name)) {
+                throw new IllegalArgumentException("Missing value for " + type + "." + field.name);
+            }
+
+            encodeValue(keccak, field.type, data.opt(field.name));
+        }
+
+        return Keccak.doFinal(keccak);
+    }
+
+    public byte[] typeHash(String type) {
+        byte[] hash = typeHashes.get(type);
+
+        if (hash == null) {
+            hash = Keccak.digest(encodeType(type).getBytes(UTF_8));
+            typeHashes.put(type, hash);
+        }
+
+        return hash;
+    }
+
+    // The primary type followed by the types it references, directly or not, sorted by name.
+    public String encodeType(String type) {
+        Set<String> deps = new LinkedHashSet<>();
+        collectDependencies(type, deps);
+        deps.remove(type);
+
+        List<String> sorted = new ArrayList<>(deps);
+        Collections.sort(sorted);
+        sorted.add(0, type);
+
+        StringBuilder sb = new StringBuilder();
+
+        for (String name : sorted) {
+            sb.append(name).append('(');
+            List<Field> fields = fields(name);
+
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+
+                sb.append(fields.get(i).type).append(' ').append(fields.get(i).name);
+            }
+
+            sb.append(')');
+        }
+
+        return sb.toString();
+    }
+
+    private void collectDependencies(String type, Set<String> deps) {
+        if (!types.containsKey(type) || !deps.add(type)) {
+            return;
+        }
+
+        for (Field field : types.get(type)) {
+            collectDependencies(baseType(field.type), deps);
+        }
+    }
+
+    private List<Field> fields(String type) {
+        List<Field> fields = types.get(type);
+
+        if (fields == null) {
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+
+        return fields;
+    }
+
+    private static String baseType(String type) {
+        int bracket = type.indexOf('[');
+        return bracket < 0 ? type : type.substring(0, bracket);
+    }
+
+    private void encodeValue(KeccakDigest out, String type, Object value) {
+        if (type.endsWith("]")) {
+            out.update(hashArray(type, value), 0, 32);
+        } else if (types.containsKey(type)) {
+            if (!(value instanceof JSONObject)) {
+                throw new IllegalArgumentException("Expected an object for " + type);
+            }
+
+            out.update(hashStruct(type, (JSONObject) value), 0, 32);
+        } else if (type.equals("string")) {
+            byte[] bytes = string(value).getBytes(UTF_8);
+            out.update(Keccak.digest(bytes), 0, 32);
+        } else if (type.equals("bytes")) {
+            out.update(Keccak.digestHex(string(value)), 0, 32);
+        } else {
+            encodeAtomic(type, value);
+            out.update(word, 0, 32);
+        }
+    }
+
+    private byte[] hashArray(String type, Object value) {
+        if (!(value instanceof JSONArray)) {
+            throw new IllegalArgumentException("Expected an array for " + type);
+        }
+
+        JSONArray array = (JSONArray) value;
+        int bracket = type.lastIndexOf('[');
+        String elementType = type.substring(0, bracket);
+        String size = type.substring(bracket + 1, type.length() - 1);
+
+        if (!size.isEmpty() && Integer.parseInt(size) != array.length()) {
+            throw new IllegalArgumentException("Expected " + size + " elements for " + type);
+        }
+
+        KeccakDigest keccak = Keccak.newDigest();
+
+        for (int i = 0; i < array.length(); i++) {
+            encodeValue(keccak, elementType, array.opt(i));
+        }
+
+        return Keccak.doFinal(keccak);
+    }
+
+    // Encodes a value of a 32 bytes type into the word buffer.
+    private void encodeAtomic(String type, Object value) {
+        Arrays.fill(word, (byte) 0);
+
+        if (type.equals("bool")) {
+            if (!(value instanceof Boolean)) {
+                throw new IllegalArgumentException("Expected a boolean for " + type);
+            }
+
+            word[31] = (byte) (((Boolean) value) ? 1 : 0);
+        } else if (type.equals("address")) {
+            byte[] address = hex(string(value));
+
+            if (address.length != 20) {
+                throw new IllegalArgumentException("Invalid address " + value);
+            }
+
+            System.arraycopy(address, 0, word, 12, 20);
+        } else if (type.startsWith("bytes")) {
+            int size = size(type, 5, 1, 32, 1);
+            byte[] bytes = hex(string(value));
+
+            if (bytes.length > size) {
+                throw new IllegalArgumentException("Invalid " + type + " " + value);
+            }
+
+            System.arraycopy(bytes, 0, word, 0, bytes.length);
+        } else if (type.startsWith("uint")) {
+            BigInteger n = integer(value);
+
+            if (n.signum() < 0 || n.bitLength() > size(type, 4, 8, 256, 8)) {
+                throw new IllegalArgumentException("Value out of range for " + type);
+            }
+
+            putInteger(n);
+        } else if (type.startsWith("int")) {
+            BigInteger n = integer(value);
+
+            if (n.bitLength() > size(type, 3, 8, 256, 8) - 1) {
+                throw new IllegalArgumentException("Value out of range for " + type);
+            }
+
+            putInteger(n);
+        } else {
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    // The N of a type like uintN or bytesN, which must be a multiple of step within [min, max]. A missing N means
+    // the maximum, as uint stands for uint256.
+    private static int size(String type, int prefix, int min, int max, int step) {
+        if (type.length() == prefix) {
+            return max;
+        }
+
+        int size;
+
+        try {
+            size = Integer.parseInt(type.substring(prefix));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+
+        if (size < min || size > max || size % step != 0) {
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+
+        return size;
+    }
+
+    // Writes n as a 32 bytes two's complement integer.
+    private void putInteger(BigInteger n) {
+        byte[] bytes = n.toByteArray();
+        int len = Math.min(bytes.length, 32);
+
+        if (n.signum() < 0) {
+            Arrays.fill(word, (byte) 0xff);
+        }
+
+        System.arraycopy(bytes, bytes.length - len, word, 32 - len, len);
+    }
+
+    private static String string(Object value) {
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Expected a string, got " + value);
+        }
+
+        return (String) value;
+    }
+
+    private static byte[] hex(String value) {
+        String hex = value.startsWith("0x") || value.startsWith("0X") ? value.substring(2) : value;
+        return HexUtils.decode(hex);
+    }
+
+    // Integers are given as JSON numbers or as decimal or 0x prefixed hex strings. Values beyond the precision of
+    // a double must be strings.
+    private static BigInteger integer(Object value) {
+        try {
+            if (value instanceof Integer || value instanceof Long) {
+                return BigInteger.valueOf(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                return new BigDecimal(value.toString()).toBigIntegerExact();
+            } else if (value instanceof String) {
+                String s = (String) value;
+
+                if (s.startsWith("0x") || s.startsWith("0X")) {
+                    return new BigInteger(s.substring(2), 16);
+                } else if (s.startsWith("-0x") || s.startsWith("-0X")) {
+                    return new BigInteger(s.substring(3), 16).negate();
+                }
+
+                return new BigInteger(s);
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid integer " + value);
+        }
+
+        throw new IllegalArgumentException("Expected an integer, got " + value);
+    }
+}
@@ -0,0 +1,208 @@
+package im.status.ethereum.keycard;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A BIP39 wordlist, indexed for word to index and prefix lookups. The words are kept sorted together with their
+ * index in the list, so both lookups are binary searches. The English list is already sorted, in which case no copy
+ * is made.
+ */
+public class Wordlist {
+    public static final int SIZE = 2048;
+
+    private final String[] words;
+    private final String[] sorted;
+    private final int[] sortedIndexes;
+    // The list this wordlist was parsed from, if it was parsed.
+    private final String source;
+
+    public Wordlist(String[] words) {
+        this(words, null);
+    }
+
+    private Wordlist(String[] words, String source) {
+        if (words.length != SIZE) {
+            throw new IllegalArgumentException("A wordlist must contain " + SIZE + " words, got " + words.length);
+        }
+
+        this.words = words;
+        this.source = source;
+
+        if (isSorted(words)) {
+            this.sorted = words;
+            this.sortedIndexes = null;
+        } else {
+            Integer[] order = new Integer[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                order[i] = i;
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Wordlist.this.words[a].compareTo(Wordlist.this.words[b]);
+                }
+            });
+
+            this.sorted = new String[SIZE];
+            this.sortedIndexes = new int[SIZE];
+
+            for (int i = 0; i < SIZE; i++) {
+                this.sorted[i] = words[order[i]];
+                this.sortedIndexes[i] = order[i];
+            }
+        }
+    }
+
+    /**
+     * Parses a list of words separated by new lines.
+     */
+    public static Wordlist parse(String list) {
+        String[] words = new String[SIZE];
+        int count = 0;
+        int start = 0;
+        int length = list.length();
+
+        while (start < length) {
+            int end = list.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+
+            String word = list.substring(start, end).trim();
+            if (!word.isEmpty()) {
+                if (count == SIZE) {
+                    throw new IllegalArgumentException("A wordlist must contain " + SIZE + " words");
+                }
+
+                words[count++] = word;
+            }
+
+            start = end + 1;
+        }
+
+        if (count != SIZE) {
+            throw new IllegalArgumentException("A wordlist must contain " + SIZE + " words, got " + count);
+        }
+
+        return new Wordlist(words, list);
+    }
+
+    /**
+     * Whether this wordlist was parsed from the given list, in which case parsing it again would give the same
+     * wordlist.
+     */
+    public boolean isParsedFrom(String list) {
+        return source != null && source.length() == list.length() && source.hashCode() == list.hashCode() && source.equals(list);
+    }
+
+    /**
+     * The words in list order. The returned array must not be modified.
+     */
+    public String[] getWords() {
+        return words;
+    }
+
+    public String getWord(int index) {
+        return words[index];
+    }
+
+    /**
+     * Returns the index of the given word in the list, or -1 if it is not part of it.
+     */
+    public int indexOf(String word) {
+        int i = Arrays.binarySearch(sorted, word);
+
+        if (i < 0) {
+            return -1;
+        }
+
+        return sortedIndexes == null ? i : sortedIndexes[i];
+    }
+
+    /**
+     * Returns up to limit words starting with the given prefix, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+
+        if (prefix.isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        int i = Arrays.binarySearch(sorted, prefix);
+        if (i < 0) {
+            i = -i - 1;
+        }
+
+        for (; i < SIZE && result.size() < limit && sorted[i].startsWith(prefix); i++) {
+            result.add(sorted[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks that the mnemonic only contains words of this list, has a valid length and a valid checksum.
+     */
+    public boolean isValidMnemonic(String mnemonic) {
+        String[] parts = mnemonic.trim().split("\\s+");
+        int count = parts.length;
+
+        if (count < 12 || count > 24 || count % 3 != 0) {
+            return false;
+        }
+
+        int totalBits = count * 11;
+        int checksumBits = totalBits / 33;
+        int entropyBits = totalBits - checksumBits;
+        byte[] bits = new byte[(totalBits + 7) / 8];
+
+        for (int w = 0; w < count; w++) {
+            int index = indexOf(parts[w]);
+            if (index < 0) {
+                return false;
+            }
+
+            for (int b = 0; b < 11; b++) {
+                if ((index & (1 << (10 - b))) != 0) {
+                    int pos = w * 11 + b;
+                    bits[pos / 8] |= (byte) (1 << (7 - (pos % 8)));
+                }
+            }
+        }
+
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(Arrays.copyOf(bits, entropyBits / 8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (int b = 0; b < checksumBits; b++) {
+            int pos = entropyBits + b;
+            boolean expected = (hash[b / 8] & (1 << (7 - (b % 8)))) != 0;
+            boolean actual = (bits[pos / 8] & (1 << (7 - (pos % 8)))) != 0;
+
+            if (expected != actual) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSorted(String[] words) {
+        for (int i = 1; i < words.length; i++) {
+            if (words[i - 1].compareTo(words[i]) >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -1,5 +1,9 @@
-import { NativeModules } from 'react-native';
+import * as ReactNative from 'react-native';
 
-const { RNStatusKeycard } = NativeModules;
+const { NativeModules, TurboModuleRegistry } = ReactNative;
 
-export default RNStatusKeycard;
\ No newline at end of file
+// TurboModuleRegistry resolves the module lazily and falls back to the bridge module on the legacy architecture.
+// Older React Native versions do not have it.
+const RNStatusKeycard = (TurboModuleRegistry && TurboModuleRegistry.get('RNStatusKeycard')) || NativeModules.RNStatusKeycard;
+
+export default RNStatusKeycard;